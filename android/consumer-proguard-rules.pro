@@ -7,4 +7,7 @@
 -keep interface com.yalantis.ucrop** { *; }
 
 #Okio
--dontwarn org.codehaus.mojo.animal_sniffer.*
\ No newline at end of file
+-dontwarn org.codehaus.mojo.animal_sniffer.*
+
+#Glide: GlideConfig проверяет, создан ли уже Glide
+-keepclassmembers class com.bumptech.glide.Glide { private static volatile com.bumptech.glide.Glide glide; }
@@ -1,21 +1,35 @@
 package com.chavesgu.images_picker;
 
 import android.Manifest;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
+import android.content.ContentResolver;
+import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.Context;
 import android.content.Intent;
+import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Environment;
+import android.os.OperationCanceledException;
 import android.os.ParcelFileDescriptor;
+import android.os.RemoteException;
 import android.provider.MediaStore;
+import android.provider.OpenableColumns;
 import android.util.Log;
+import android.webkit.MimeTypeMap;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.content.ContextCompat;
 
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -23,10 +37,102 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.io.File.separator;
 
 public class FileSaver {
+    // размер одного вызова transferTo: между порциями проверяется отмена
+    private static final long TRANSFER_CHUNK_SIZE = 8L * 1024 * 1024;
+    private static final int COPY_BUFFER_SIZE = 1024 * 1024;
+    // докопирование после падения процесса — только для больших файлов
+    private static final long RESUME_MIN_BYTES = 64L * 1024 * 1024;
+    // хвост, который мог не дойти до диска, переписывается заново
+    private static final long RESUME_OVERLAP_BYTES = 4L * 1024 * 1024;
+    // чужие для журнала строки IS_PENDING старше суток считаются брошенными
+    private static final long STALE_PENDING_SECONDS = 24L * 60 * 60;
+    private static final AtomicBoolean recoveryStarted = new AtomicBoolean();
+
+    /**
+     * Результат {@link #saveFile}: uri в галерее, SHA-256 содержимого (hex)
+     * и признак того, что такой файл уже был в альбоме и ничего не записывалось.
+     */
+    public static class SaveResult {
+        public final boolean success;
+        @Nullable
+        public final Uri uri;
+        @Nullable
+        public final String digest;
+        public final long size;
+        public final boolean duplicate;
+
+        SaveResult(@NonNull Uri uri, @NonNull String digest, long size, boolean duplicate) {
+            this.success = true;
+            this.uri = uri;
+            this.digest = digest;
+            this.size = size;
+            this.duplicate = duplicate;
+        }
+
+        private SaveResult(long size) {
+            this.success = false;
+            this.uri = null;
+            this.digest = null;
+            this.size = size;
+            this.duplicate = false;
+        }
+
+        @NonNull
+        static SaveResult failed(long size) {
+            return new SaveResult(size);
+        }
+
+        @NonNull
+        public HashMap<String, Object> toMap() {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("success", success);
+            map.put("uri", uri != null ? uri.toString() : null);
+            map.put("digest", digest);
+            map.put("size", size);
+            map.put("duplicate", duplicate);
+            return map;
+        }
+    }
+
+    /**
+     * Пишет содержимое файла в открытый на запись поток.
+     */
+    interface ContentWriter {
+        void write(@NonNull FileOutputStream out) throws IOException;
+    }
+
+    /**
+     * Источник данных, который можно открыть повторно: с dedupe поток
+     * может читаться дважды (для хэша и для записи).
+     */
+    interface StreamSource {
+        @NonNull
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Прогресс копирования; вызывается на потоке, который пишет файл.
+     */
+    public interface ProgressListener {
+        void onProgress(long bytesWritten, long totalBytes);
+    }
 
     /**
      * Сохраняет видео в галерею (папка Movies/<albumName>).
@@ -40,41 +146,435 @@ public class FileSaver {
             @NonNull String filePath,
             @Nullable String albumName
     ) {
-        boolean saveRes = false;
-        String folderName = context.getApplicationInfo()
-                .loadLabel(context.getPackageManager())
-                .toString();
-        if (albumName != null) folderName = albumName;
+        return saveVideo(context, filePath, albumName, null, null);
+    }
+
+    /**
+     * То же, что {@link #saveVideo(Context, String, String)}, но копирование можно
+     * прервать через signal, а ход записи получать через listener.
+     * При отмене недописанный файл удаляется.
+     */
+    public static boolean saveVideo(
+            @NonNull Context context,
+            @NonNull String filePath,
+            @Nullable String albumName,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) {
+        final File source = new File(filePath);
+        return saveToGallery(context, true, "video/mp4", "mp4", albumName, filePath,
+                out -> copyFile(source, out.getChannel(), signal, listener)) != null;
+    }
+
+    /**
+     * Сохраняет картинку в галерею (папка Pictures/<albumName>) байт в байт,
+     * без декодирования: формат, качество и EXIF остаются как в исходном файле.
+     * Возвращает true, если записалось успешно, false иначе.
+     */
+    public static boolean saveImage(
+            @NonNull Context context,
+            @NonNull String filePath,
+            @Nullable String albumName,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) {
+        final File source = new File(filePath);
+        String suffix = suffixOf(filePath);
+        return saveToGallery(context, false, mimeTypeFromSuffix(suffix), suffix, albumName, filePath,
+                out -> copyFile(source, out.getChannel(), signal, listener)) != null;
+    }
+
+    /**
+     * Сохраняет картинку (Bitmap) в галерею (папка Pictures/<albumName>).
+     * Возвращает true, если записалось успешно, false иначе.
+     * <p>
+     * Важно: до вызова этого метода вы должны проверить разрешение WRITE_EXTERNAL_STORAGE
+     * (для API < 29). На Android 10+ разрешение не нужно, если вы пишете в RELATIVE_PATH.
+     */
+    public static boolean saveImage(
+            @NonNull Context context,
+            @NonNull Bitmap bitmap,
+            @NonNull String suffix,
+            @Nullable String albumName
+    ) {
+        return saveImage(context, bitmap, suffix, albumName, 100);
+    }
+
+    /**
+     * Перекодирует Bitmap в формат, соответствующий suffix (jpg, png, webp),
+     * с заданным качеством 0..100 и сохраняет в галерею.
+     * Неизвестные форматы кодируются в JPEG.
+     */
+    public static boolean saveImage(
+            @NonNull Context context,
+            @NonNull final Bitmap bitmap,
+            @NonNull String suffix,
+            @Nullable String albumName,
+            final int quality
+    ) {
+        final Bitmap.CompressFormat format = compressFormatFromSuffix(suffix);
+        if (format == Bitmap.CompressFormat.JPEG) suffix = "jpg";
+        return saveToGallery(context, false, mimeTypeFromSuffix(suffix), suffix, albumName, null,
+                out -> {
+                    OutputStream buffered = new BufferedOutputStream(out);
+                    if (!bitmap.compress(format, quality, buffered)) {
+                        throw new IOException("Bitmap compress failed");
+                    }
+                    buffered.flush();
+                }) != null;
+    }
+
+    /**
+     * Сохраняет файл байт в байт (видео — как mp4) и по ходу записи считает SHA-256
+     * содержимого, без отдельного чтения.
+     * <p>
+     * С dedupe сначала проверяется индекс: если в альбоме уже сохранён файл того же
+     * размера и хэша и он ещё есть в галерее, возвращается его uri, ничего не записывается.
+     * Отдельное чтение для хэша до записи нужно, только если в альбоме есть файл того же размера.
+     */
+    @NonNull
+    public static SaveResult saveFile(
+            @NonNull Context context,
+            @NonNull String filePath,
+            boolean isVideo,
+            @Nullable String albumName,
+            boolean dedupe,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) {
+        final File source = new File(filePath);
+        long size = source.length();
+        String suffix = isVideo ? "mp4" : suffixOf(filePath);
+        String mimeType = isVideo ? "video/mp4" : mimeTypeFromSuffix(suffix);
+        String album = albumKey(context, isVideo, albumName);
+        SaveIndex index = SaveIndex.get(context);
+
+        if (dedupe && index.hasSize(album, size)) {
+            String digest;
+            try {
+                digest = digestOf(source, signal);
+            } catch (IOException | OperationCanceledException e) {
+                e.printStackTrace();
+                return SaveResult.failed(size);
+            }
+            Uri existing = index.find(album, size, digest);
+            if (existing != null) {
+                if (isSaved(context, existing, size)) return new SaveResult(existing, digest, size, true);
+                // файл удалили из галереи
+                index.remove(album, size, digest);
+            }
+            // хэш уже известен: копируем через transferTo
+            Uri uri = saveToGallery(context, isVideo, mimeType, suffix, albumName, filePath,
+                    out -> copyFile(source, out.getChannel(), signal, listener));
+            if (uri == null) return SaveResult.failed(size);
+            index.put(album, size, digest, uri);
+            return new SaveResult(uri, digest, size, false);
+        }
+
+        final MessageDigest digest = newDigest();
+        Uri uri = saveToGallery(context, isVideo, mimeType, suffix, albumName, filePath,
+                out -> copyFile(source, out.getChannel(), 0, signal, listener, digest));
+        if (uri == null) return SaveResult.failed(size);
+        String hex = toHex(digest.digest());
+        index.put(album, size, hex, uri);
+        return new SaveResult(uri, hex, size, false);
+    }
+
+    /**
+     * Сохраняет байты из памяти как есть, без временного файла и без декодирования.
+     * mimeType задаёт вызывающий (image/* или video/*), по нему выбирается коллекция.
+     */
+    @NonNull
+    public static SaveResult saveBytes(
+            @NonNull Context context,
+            @NonNull final byte[] bytes,
+            @NonNull String mimeType,
+            @Nullable String albumName,
+            boolean dedupe,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) {
+        return saveStream(context, () -> new ByteArrayInputStream(bytes), bytes.length,
+                mimeType, albumName, dedupe, signal, listener);
+    }
+
+    /**
+     * Сохраняет содержимое content:// uri потоком, без временного файла.
+     * Если mimeType не задан, берётся из ContentResolver.getType.
+     */
+    @NonNull
+    public static SaveResult saveContentUri(
+            @NonNull Context context,
+            @NonNull final Uri source,
+            @Nullable String mimeType,
+            @Nullable String albumName,
+            boolean dedupe,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) {
+        final ContentResolver resolver = context.getContentResolver();
+        if (mimeType == null) mimeType = resolver.getType(source);
+        return saveStream(context, () -> {
+            InputStream in = resolver.openInputStream(source);
+            if (in == null) throw new FileNotFoundException(source.toString());
+            return in;
+        }, contentSize(resolver, source), mimeType, albumName, dedupe, signal, listener);
+    }
+
+    /**
+     * Общая часть saveBytes/saveContentUri: поток пишется в галерею через буфер,
+     * SHA-256 считается по ходу записи. size < 0 — размер неизвестен (dedupe тогда не работает).
+     */
+    @NonNull
+    private static SaveResult saveStream(
+            @NonNull Context context,
+            @NonNull final StreamSource source,
+            final long size,
+            @Nullable String mimeType,
+            @Nullable String albumName,
+            boolean dedupe,
+            @Nullable final CancellationSignal signal,
+            @Nullable final ProgressListener listener
+    ) {
+        if (mimeType == null || !(mimeType.startsWith("image/") || mimeType.startsWith("video/"))) {
+            return SaveResult.failed(Math.max(size, 0));
+        }
+        boolean isVideo = mimeType.startsWith("video/");
+        String album = albumKey(context, isVideo, albumName);
+        SaveIndex index = SaveIndex.get(context);
+
+        String knownDigest = null;
+        if (dedupe && size >= 0 && index.hasSize(album, size)) {
+            try (InputStream in = source.open()) {
+                knownDigest = digestOf(in, signal);
+            } catch (IOException | OperationCanceledException e) {
+                e.printStackTrace();
+                return SaveResult.failed(size);
+            }
+            Uri existing = index.find(album, size, knownDigest);
+            if (existing != null) {
+                if (isSaved(context, existing, size)) return new SaveResult(existing, knownDigest, size, true);
+                index.remove(album, size, knownDigest);
+            }
+        }
+
+        final MessageDigest digest = knownDigest == null ? newDigest() : null;
+        final long[] written = new long[1];
+        Uri uri = saveToGallery(context, isVideo, mimeType, suffixFromMimeType(mimeType, isVideo), albumName, null,
+                out -> {
+                    try (InputStream in = source.open()) {
+                        written[0] = copyStream(in, out.getChannel(), size, signal, listener, digest);
+                    }
+                });
+        if (uri == null) return SaveResult.failed(Math.max(size, 0));
+        String hex = digest != null ? toHex(digest.digest()) : knownDigest;
+        index.put(album, written[0], hex, uri);
+        return new SaveResult(uri, hex, written[0], false);
+    }
+
+    /**
+     * Итог пакетного сохранения: результат по каждому файлу в том же порядке,
+     * что и paths. Вызывается на потоке, который закончил последним.
+     */
+    public interface BatchCallback {
+        void onComplete(@NonNull List<Boolean> results);
+    }
+
+    /**
+     * Пакетное сохранение картинок (байт в байт).
+     */
+    public static void saveImages(
+            @NonNull Context context,
+            @NonNull List<String> paths,
+            @Nullable String albumName,
+            @NonNull Executor executor,
+            @NonNull BatchCallback callback
+    ) {
+        saveAllToGallery(context, false, paths, albumName, executor, callback);
+    }
+
+    /**
+     * Пакетное сохранение видео.
+     */
+    public static void saveVideos(
+            @NonNull Context context,
+            @NonNull List<String> paths,
+            @Nullable String albumName,
+            @NonNull Executor executor,
+            @NonNull BatchCallback callback
+    ) {
+        saveAllToGallery(context, true, paths, albumName, executor, callback);
+    }
+
+    /**
+     * API >= 29: все строки с IS_PENDING создаются одним applyBatch, файлы пишутся
+     * параллельно задачами в executor, а задача, закончившая последней, одним applyBatch
+     * снимает IS_PENDING у успешных и удаляет неудачные. API < 29: файлы пишутся
+     * параллельно по одному. Никто не ждёт чужих задач, поэтому executor может быть
+     * тем же пулом, в котором выполняется вызов (и его лимит параллельности соблюдается).
+     * Задачи, которые executor отклонил, считаются неудачными.
+     */
+    private static void saveAllToGallery(
+            @NonNull final Context context,
+            final boolean isVideo,
+            @NonNull final List<String> paths,
+            @Nullable final String albumName,
+            @NonNull Executor executor,
+            @NonNull final BatchCallback callback
+    ) {
+        final int count = paths.size();
+        final Boolean[] res = new Boolean[count];
+        Arrays.fill(res, false);
+        if (count == 0) {
+            callback.onComplete(new ArrayList<Boolean>());
+            return;
+        }
+        final AtomicInteger remaining = new AtomicInteger(count);
 
-        // API >= 29 → используем RELATIVE_PATH и IS_PENDING
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Video.Media.MIME_TYPE, "video/mp4");
-            values.put(MediaStore.Video.Media.DATE_ADDED, System.currentTimeMillis() / 1000);
-            values.put(MediaStore.Video.Media.DATE_TAKEN, System.currentTimeMillis());
-            values.put(MediaStore.Video.Media.RELATIVE_PATH, "Movies/" + folderName);
-            values.put(MediaStore.Video.Media.IS_PENDING, true);
+            final ContentResolver resolver = context.getContentResolver();
+            String relativePath = (isVideo ? "Movies/" : "Pictures/") + folderNameOf(context, albumName);
+            Uri collection = isVideo
+                    ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                    : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
 
-            // Вставляем запись, получаем Uri
-            Uri uri = context.getContentResolver()
-                    .insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, values);
-            if (uri == null) return false;
+            ArrayList<ContentProviderOperation> inserts = new ArrayList<>(count);
+            for (String path : paths) {
+                inserts.add(ContentProviderOperation.newInsert(collection)
+                        .withValues(pendingValues(isVideo ? "video/mp4" : mimeTypeFromSuffix(suffixOf(path)), relativePath))
+                        .build());
+            }
+            final ContentProviderResult[] inserted;
+            long insertStart = Metrics.start();
+            try {
+                inserted = resolver.applyBatch(MediaStore.AUTHORITY, inserts);
+                Metrics.record(Metrics.MEDIASTORE_INSERT, insertStart);
+            } catch (RemoteException | OperationApplicationException e) {
+                e.printStackTrace();
+                callback.onComplete(Arrays.asList(res));
+                return;
+            }
+            final List<Uri> uris = new ArrayList<>(count);
+            for (ContentProviderResult result : inserted) {
+                uris.add(result.uri);
+            }
+            final SaveJournal journal = SaveJournal.get(context);
+            journal.beginAll(uris, paths);
 
-            // Записываем сам файл через ParcelFileDescriptor
-            try (ParcelFileDescriptor pfd =
-                         context.getContentResolver().openFileDescriptor(uri, "w");
-                 OutputStream out = new FileOutputStream(pfd.getFileDescriptor())) {
+            final Runnable publishAll = () -> {
+                ArrayList<ContentProviderOperation> publish = new ArrayList<>(count);
+                ContentValues published = new ContentValues();
+                published.put(MediaStore.MediaColumns.IS_PENDING, false);
+                for (int i = 0; i < count; i++) {
+                    Uri uri = uris.get(i);
+                    if (uri == null) continue;
+                    publish.add(res[i]
+                            ? ContentProviderOperation.newUpdate(uri).withValues(published).build()
+                            : ContentProviderOperation.newDelete(uri).build());
+                }
+                long publishStart = Metrics.start();
+                try {
+                    resolver.applyBatch(MediaStore.AUTHORITY, publish);
+                    Metrics.record(Metrics.MEDIASTORE_PUBLISH, publishStart);
+                    journal.endAll(uris);
+                } catch (RemoteException | OperationApplicationException e) {
+                    // строки остаются в журнале и будут разобраны при следующем запуске
+                    e.printStackTrace();
+                    Arrays.fill(res, false);
+                }
+                callback.onComplete(Arrays.asList(res));
+            };
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                final Uri uri = uris.get(i);
+                final File source = new File(paths.get(i));
+                submit(executor, () -> res[index] = uri != null && writeToUri(context, uri,
+                        out -> copyFile(source, out.getChannel(), null, null)), remaining, publishAll);
+            }
+        } else {
+            final Runnable finish = () -> callback.onComplete(Arrays.asList(res));
+            for (int i = 0; i < count; i++) {
+                final int index = i;
+                final String path = paths.get(i);
+                submit(executor, () -> res[index] = isVideo
+                        ? saveVideo(context, path, albumName)
+                        : saveImage(context, path, albumName, null, null), remaining, finish);
+            }
+        }
+    }
 
-                saveRes = saveToStream(filePath, out);
-            } catch (IOException e) {
+    /**
+     * Ставит задачу пакета в executor; после последней задачи (или отказа executor)
+     * выполняется onLast.
+     */
+    private static void submit(@NonNull Executor executor, @NonNull final Runnable task,
+                               @NonNull final AtomicInteger remaining, @NonNull final Runnable onLast) {
+        Runnable wrapped = () -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
                 e.printStackTrace();
-                return false;
+            } finally {
+                if (remaining.decrementAndGet() == 0) onLast.run();
+            }
+        };
+        try {
+            executor.execute(wrapped);
+        } catch (RejectedExecutionException e) {
+            // executor остановлен (плагин отсоединён): файл считается несохранённым
+            if (remaining.decrementAndGet() == 0) onLast.run();
+        }
+    }
+
+    /**
+     * Создаёт файл в галерее и записывает его через writer.
+     * API >= 29: строка MediaStore с RELATIVE_PATH и IS_PENDING, который снимается
+     * после одного fsync в конце. API < 29: файл во внешней памяти + MediaScanner.
+     * При ошибке или отмене недописанный файл удаляется.
+     * Возвращает uri сохранённого файла или null.
+     */
+    @Nullable
+    private static Uri saveToGallery(
+            @NonNull Context context,
+            boolean isVideo,
+            @NonNull String mimeType,
+            @NonNull String suffix,
+            @Nullable String albumName,
+            @Nullable String sourcePath,
+            @NonNull ContentWriter writer
+    ) {
+        SaveJournal journal = SaveJournal.get(context);
+        String folderName = folderNameOf(context, albumName);
+        Uri collection = isVideo
+                ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+
+        // API >= 29 → используем RELATIVE_PATH и IS_PENDING
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentValues values = pendingValues(mimeType,
+                    (isVideo ? "Movies/" : "Pictures/") + folderName);
+
+            // Вставляем запись, получаем Uri
+            long insertStart = Metrics.start();
+            Uri uri = context.getContentResolver().insert(collection, values);
+            if (uri == null) return null;
+            Metrics.record(Metrics.MEDIASTORE_INSERT, insertStart);
+            journal.begin(uri, sourcePath);
+
+            if (!writeToUri(context, uri, writer)) {
+                context.getContentResolver().delete(uri, null, null);
+                journal.end(uri);
+                return null;
             }
 
             // Убираем флаг PENDING
             values.clear();
-            values.put(MediaStore.Video.Media.IS_PENDING, false);
+            values.put(MediaStore.MediaColumns.IS_PENDING, false);
+            long publishStart = Metrics.start();
             context.getContentResolver().update(uri, values, null, null);
+            Metrics.record(Metrics.MEDIASTORE_PUBLISH, publishStart);
+            journal.end(uri);
+            return uri;
         }
         // API < 29 → записываем вручную на внешнюю директорию + уведомляем MediaScanner
         else {
@@ -82,108 +582,369 @@ public class FileSaver {
                     + separator + folderName;
             File directory = new File(storagePath);
             if (!directory.exists() && !directory.mkdirs()) {
-                return false;
+                return null;
             }
 
-            String fileName = System.currentTimeMillis() + ".mp4";
-            File file = new File(directory, fileName);
-            try (OutputStream out = new FileOutputStream(file)) {
-                saveRes = saveToStream(filePath, out);
-                Uri tmpUri = Uri.fromFile(file);
-                context.sendBroadcast(new Intent(
-                        Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, tmpUri));
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                return false;
+            File file;
+            try {
+                file = createUniqueFile(directory, suffix);
             } catch (IOException e) {
                 e.printStackTrace();
-                return false;
+                return null;
             }
+            Uri fileUri = Uri.fromFile(file);
+            journal.begin(fileUri, sourcePath);
+            long writeStart = Metrics.start();
+            try (FileOutputStream out = new FileOutputStream(file)) {
+                writer.write(out);
+                out.getChannel().force(true);
+                Metrics.record(Metrics.MEDIASTORE_WRITE, writeStart);
+            } catch (IOException | OperationCanceledException e) {
+                e.printStackTrace();
+                file.delete();
+                return null;
+            } finally {
+                journal.end(fileUri);
+            }
+            context.sendBroadcast(new Intent(
+                    Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, fileUri));
 
             // Вставляем «старым» способом в MediaStore
             ContentValues oldValues = new ContentValues();
-            oldValues.put(MediaStore.Video.Media.DATA, file.getAbsolutePath());
-            context.getContentResolver()
-                    .insert(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, oldValues);
+            oldValues.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
+            long insertStart = Metrics.start();
+            Uri uri = context.getContentResolver().insert(collection, oldValues);
+            Metrics.record(Metrics.MEDIASTORE_INSERT, insertStart);
+            return uri != null ? uri : fileUri;
         }
-
-        return saveRes;
     }
 
     /**
-     * Сохраняет картинку (Bitmap) в галерею (папка Pictures/<albumName>).
-     * Возвращает true, если записалось успешно, false иначе.
-     * <p>
-     * Важно: до вызова этого метода вы должны проверить разрешение WRITE_EXTERNAL_STORAGE
-     * (для API < 29). На Android 10+ разрешение не нужно, если вы пишете в RELATIVE_PATH.
+     * Создаёт пустую запись в галерее, в которую стороннее приложение (камера)
+     * пишет через content:// uri. API >= 29: строка с IS_PENDING в RELATIVE_PATH.
+     * API < 29: пустой файл в папке альбома и строка MediaStore с его DATA.
+     * Запись попадает в журнал до {@link #publishPendingEntry} / {@link #discardPendingEntry}.
      */
-    public static boolean saveImage(
-            @NonNull Context context,
-            @NonNull Bitmap bitmap,
-            @NonNull String suffix,
-            @Nullable String albumName
-    ) {
-        boolean saveRes = false;
-        String folderName = context.getApplicationInfo()
-                .loadLabel(context.getPackageManager())
-                .toString();
-        if (albumName != null) folderName = albumName;
-
-        // API >= 29 → RELATIVE_PATH + IS_PENDING
+    @Nullable
+    public static Uri createPendingEntry(@NonNull Context context, boolean isVideo, @Nullable String albumName) {
+        String folderName = folderNameOf(context, albumName);
+        String mimeType = isVideo ? "video/mp4" : "image/jpeg";
+        Uri collection = isVideo
+                ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                : MediaStore.Images.Media.EXTERNAL_CONTENT_URI;
+        ContentValues values;
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-            ContentValues values = new ContentValues();
-            values.put(MediaStore.Images.Media.MIME_TYPE, mimeTypeFromSuffix(suffix));
-            values.put(MediaStore.Images.Media.DATE_ADDED, System.currentTimeMillis() / 1000);
-            values.put(MediaStore.Images.Media.DATE_TAKEN, System.currentTimeMillis());
-            values.put(MediaStore.Images.Media.RELATIVE_PATH, "Pictures/" + folderName);
-            values.put(MediaStore.Images.Media.IS_PENDING, true);
-
-            Uri uri = context.getContentResolver()
-                    .insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, values);
-            if (uri == null) return false;
-
-            try (OutputStream out = context.getContentResolver().openOutputStream(uri)) {
-                saveRes = saveBitmapToStream(bitmap, out);
+            values = pendingValues(mimeType, (isVideo ? "Movies/" : "Pictures/") + folderName);
+        } else {
+            File directory = new File(Environment.getExternalStorageDirectory(), folderName);
+            if (!directory.exists() && !directory.mkdirs()) return null;
+            File file;
+            try {
+                file = createUniqueFile(directory, isVideo ? "mp4" : "jpg");
             } catch (IOException e) {
                 e.printStackTrace();
-                return false;
+                return null;
             }
+            values = new ContentValues();
+            values.put(MediaStore.MediaColumns.DATA, file.getAbsolutePath());
+            values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+            values.put(MediaStore.MediaColumns.DATE_ADDED, System.currentTimeMillis() / 1000);
+        }
+        long insertStart = Metrics.start();
+        Uri uri;
+        try {
+            uri = context.getContentResolver().insert(collection, values);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (uri == null) return null;
+        Metrics.record(Metrics.MEDIASTORE_INSERT, insertStart);
+        SaveJournal.get(context).beginCapture(uri);
+        return uri;
+    }
 
-            values.clear();
-            values.put(MediaStore.Images.Media.IS_PENDING, false);
-            context.getContentResolver().update(uri, values, null, null);
+    /**
+     * Публикует запись из {@link #createPendingEntry} и возвращает путь к файлу.
+     * Пустая запись (приложение ничего не записало) удаляется, возвращается null.
+     * Вызывается и при разборе журнала, если процесс умер, пока была открыта камера.
+     */
+    @Nullable
+    public static String publishPendingEntry(@NonNull Context context, @NonNull Uri uri) {
+        ContentResolver resolver = context.getContentResolver();
+        String path = null;
+        long size = 0;
+        try (Cursor cursor = queryIncludingPending(resolver, uri, new String[]{
+                MediaStore.MediaColumns.DATA, MediaStore.MediaColumns.SIZE}, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                path = cursor.getString(0);
+                size = cursor.getLong(1);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
         }
-        // API < 29 → записываем вручную + MediaScanner
-        else {
-            String storagePath = Environment.getExternalStorageDirectory().toString()
-                    + separator + folderName;
-            File directory = new File(storagePath);
-            if (!directory.exists() && !directory.mkdirs()) {
-                return false;
+        // SIZE обновляется только после сканирования; на API 29+ путь DATA может быть
+        // недоступен, поэтому размер строки берётся из её дескриптора
+        if (path != null && size <= 0) size = pendingEntrySize(context, uri, path);
+        if (path == null || size <= 0) {
+            discardPendingEntry(context, uri);
+            return null;
+        }
+        long publishStart = Metrics.start();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.MediaColumns.IS_PENDING, false);
+            resolver.update(uri, values, null, null);
+        } else {
+            context.sendBroadcast(new Intent(
+                    Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, Uri.fromFile(new File(path))));
+        }
+        Metrics.record(Metrics.MEDIASTORE_PUBLISH, publishStart);
+        SaveJournal.get(context).end(uri);
+        return path;
+    }
+
+    private static long pendingEntrySize(@NonNull Context context, @NonNull Uri uri, @NonNull String path) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q) return new File(path).length();
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r")) {
+            return pfd != null ? pfd.getStatSize() : 0;
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return 0;
+        }
+    }
+
+    /**
+     * Запрос, который видит и строки IS_PENDING этого приложения:
+     * на API 29 они скрыты без setIncludePending, на API 30+ — без QUERY_ARG_MATCH_PENDING.
+     */
+    @SuppressWarnings("deprecation")
+    @Nullable
+    private static Cursor queryIncludingPending(@NonNull ContentResolver resolver, @NonNull Uri uri,
+                                                @NonNull String[] projection, @Nullable String selection,
+                                                @Nullable String[] selectionArgs) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            if (selection != null) {
+                queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+                queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
             }
+            queryArgs.putInt(MediaStore.QUERY_ARG_MATCH_PENDING, MediaStore.MATCH_INCLUDE);
+            return resolver.query(uri, projection, queryArgs, null);
+        }
+        if (Build.VERSION.SDK_INT == Build.VERSION_CODES.Q) {
+            return resolver.query(MediaStore.setIncludePending(uri), projection, selection, selectionArgs, null);
+        }
+        return resolver.query(uri, projection, selection, selectionArgs, null);
+    }
 
-            String fileName = System.currentTimeMillis() + "." + suffix;
-            File file = new File(directory, fileName);
-            try (OutputStream out = new FileOutputStream(file)) {
-                saveRes = saveBitmapToStream(bitmap, out);
-                Uri tmpUri = Uri.fromFile(file);
-                context.sendBroadcast(new Intent(
-                        Intent.ACTION_MEDIA_SCANNER_SCAN_FILE, tmpUri));
-            } catch (FileNotFoundException e) {
-                e.printStackTrace();
-                return false;
-            } catch (IOException e) {
+    /**
+     * Путь, по которому приложение может прочитать опубликованный файл галереи.
+     * На API 29 без legacy-хранилища прямой доступ по DATA закрыт, поэтому
+     * файл копируется в кэш приложения; на остальных версиях возвращается path.
+     */
+    @Nullable
+    public static String readablePath(@NonNull Context context, @NonNull Uri uri, @NonNull String path,
+                                      @NonNull String mimeType) {
+        if (Build.VERSION.SDK_INT != Build.VERSION_CODES.Q || Environment.isExternalStorageLegacy()) {
+            return path;
+        }
+        File target = new File(context.getCacheDir(), "image_picker_camera_" + UUID.randomUUID()
+                + "." + suffixFromMimeType(mimeType, mimeType.startsWith("video/")));
+        try (ParcelFileDescriptor pfd = context.getContentResolver().openFileDescriptor(uri, "r");
+             FileInputStream in = new FileInputStream(pfd.getFileDescriptor());
+             FileOutputStream out = new FileOutputStream(target)) {
+            copyStream(in, out.getChannel(), pfd.getStatSize(), null, null, null);
+            return target.getAbsolutePath();
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            target.delete();
+            return null;
+        }
+    }
+
+    /**
+     * Удаляет запись из {@link #createPendingEntry} (съёмка отменена или не удалась).
+     */
+    public static void discardPendingEntry(@NonNull Context context, @NonNull Uri uri) {
+        try {
+            context.getContentResolver().delete(uri, null, null);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+        SaveJournal.get(context).end(uri);
+    }
+
+    /**
+     * Разбирает сохранения, прерванные падением процесса (по журналу):
+     * большие файлы с сохранившимся исходником докопируются с места остановки
+     * и публикуются, снимки камеры публикуются, если камера успела их записать,
+     * остальные недописанные строки и файлы удаляются.
+     * Затем удаляются брошенные строки IS_PENDING этого приложения, которых нет в журнале.
+     * Выполняется один раз за процесс: повторные вызовы (второй FlutterEngine) ничего не делают.
+     */
+    public static void recoverPendingSaves(@NonNull Context context) {
+        if (!recoveryStarted.compareAndSet(false, true)) return;
+        SaveJournal journal = SaveJournal.get(context);
+        for (SaveJournal.Entry entry : journal.takePreviousEntries()) {
+            try {
+                if (entry.capture) {
+                    // процесс умер, пока была открыта камера: снимок не теряем
+                    publishPendingEntry(context, entry.uri);
+                } else if ("file".equals(entry.uri.getScheme())) {
+                    // API < 29: недописанный файл во внешней памяти
+                    String path = entry.uri.getPath();
+                    if (path != null) new File(path).delete();
+                } else if (!resumeSave(context, entry)) {
+                    context.getContentResolver().delete(entry.uri, null, null);
+                }
+            } catch (RuntimeException e) {
                 e.printStackTrace();
-                return false;
             }
+            journal.end(entry.uri);
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            deleteStalePendingRows(context, MediaStore.Images.Media.EXTERNAL_CONTENT_URI);
+            deleteStalePendingRows(context, MediaStore.Video.Media.EXTERNAL_CONTENT_URI);
+        }
+    }
 
-            ContentValues oldValues = new ContentValues();
-            oldValues.put(MediaStore.Images.Media.DATA, file.getAbsolutePath());
-            context.getContentResolver()
-                    .insert(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, oldValues);
+    /**
+     * Докопирует строку MediaStore с позиции, до которой она была записана.
+     * Возвращает false, если докопировать нельзя (нет исходника, файл небольшой,
+     * исходник после падения изменён или заменён другим файлом и т.п.).
+     */
+    private static boolean resumeSave(@NonNull Context context, @NonNull SaveJournal.Entry entry) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || entry.sourcePath == null) return false;
+        File source = new File(entry.sourcePath);
+        long size = source.length();
+        if (!source.isFile() || size < RESUME_MIN_BYTES) return false;
+        // иначе в галерею попала бы склейка старого и нового содержимого
+        if (size != entry.sourceLength || source.lastModified() != entry.sourceModified) return false;
+        ContentResolver resolver = context.getContentResolver();
+        try (ParcelFileDescriptor pfd = resolver.openFileDescriptor(entry.uri, "rw");
+             FileOutputStream out = new FileOutputStream(pfd.getFileDescriptor())) {
+            long written = pfd.getStatSize();
+            if (written < 0 || written > size) return false;
+            long position = Math.max(0, written - RESUME_OVERLAP_BYTES);
+            FileChannel channel = out.getChannel();
+            channel.position(position);
+            if (copyFile(source, channel, position, null, null) != size) return false;
+            channel.force(true);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+            return false;
+        }
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.IS_PENDING, false);
+        return resolver.update(entry.uri, values, null, null) > 0;
+    }
+
+    /**
+     * Строки IS_PENDING этого приложения старше суток, не попавшие в журнал
+     * (процесс умер между insert и записью журнала).
+     */
+    private static void deleteStalePendingRows(@NonNull Context context, @NonNull Uri collection) {
+        ContentResolver resolver = context.getContentResolver();
+        String selection = MediaStore.MediaColumns.IS_PENDING + "=1 AND "
+                + MediaStore.MediaColumns.OWNER_PACKAGE_NAME + "=? AND "
+                + MediaStore.MediaColumns.DATE_ADDED + "<?";
+        String[] selectionArgs = new String[]{context.getPackageName(),
+                String.valueOf(System.currentTimeMillis() / 1000 - STALE_PENDING_SECONDS)};
+        Cursor cursor;
+        try {
+            cursor = queryIncludingPending(resolver, collection,
+                    new String[]{MediaStore.MediaColumns._ID}, selection, selectionArgs);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (cursor == null) return;
+        ArrayList<ContentProviderOperation> deletes = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                deletes.add(ContentProviderOperation
+                        .newDelete(ContentUris.withAppendedId(collection, cursor.getLong(0))).build());
+            }
+        } finally {
+            cursor.close();
+        }
+        if (deletes.isEmpty()) return;
+        try {
+            resolver.applyBatch(MediaStore.AUTHORITY, deletes);
+        } catch (RemoteException | OperationApplicationException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Записывает файл в строку MediaStore через ParcelFileDescriptor,
+     * fsync один раз в конце. Возвращает false при ошибке или отмене.
+     */
+    private static boolean writeToUri(
+            @NonNull Context context,
+            @NonNull Uri uri,
+            @NonNull ContentWriter writer
+    ) {
+        long start = Metrics.start();
+        try (ParcelFileDescriptor pfd =
+                     context.getContentResolver().openFileDescriptor(uri, "w");
+             FileOutputStream out = new FileOutputStream(pfd.getFileDescriptor())) {
+
+            writer.write(out);
+            out.getChannel().force(true);
+            Metrics.record(Metrics.MEDIASTORE_WRITE, start);
+            return true;
+        } catch (IOException | OperationCanceledException e) {
+            e.printStackTrace();
+            return false;
         }
+    }
+
+    @NonNull
+    private static ContentValues pendingValues(@NonNull String mimeType, @NonNull String relativePath) {
+        ContentValues values = new ContentValues();
+        values.put(MediaStore.MediaColumns.MIME_TYPE, mimeType);
+        values.put(MediaStore.MediaColumns.DATE_ADDED, System.currentTimeMillis() / 1000);
+        values.put(MediaStore.MediaColumns.DATE_TAKEN, System.currentTimeMillis());
+        values.put(MediaStore.MediaColumns.RELATIVE_PATH, relativePath);
+        values.put(MediaStore.MediaColumns.IS_PENDING, true);
+        return values;
+    }
+
+    /**
+     * Ключ альбома в индексе дубликатов: коллекция + имя папки.
+     */
+    @NonNull
+    private static String albumKey(@NonNull Context context, boolean isVideo, @Nullable String albumName) {
+        return (isVideo ? "Movies/" : "Pictures/") + folderNameOf(context, albumName);
+    }
 
-        return saveRes;
+    @NonNull
+    private static String folderNameOf(@NonNull Context context, @Nullable String albumName) {
+        if (albumName != null) return albumName;
+        return context.getApplicationInfo()
+                .loadLabel(context.getPackageManager())
+                .toString();
+    }
+
+    /**
+     * Имя файла по текущему времени; при совпадении (параллельные сохранения)
+     * добавляется счётчик.
+     */
+    @NonNull
+    private static File createUniqueFile(@NonNull File directory, @NonNull String suffix) throws IOException {
+        String baseName = String.valueOf(System.currentTimeMillis());
+        File file = new File(directory, baseName + "." + suffix);
+        for (int i = 1; !file.createNewFile(); i++) {
+            file = new File(directory, baseName + "_" + i + "." + suffix);
+        }
+        return file;
+    }
+
+    @NonNull
+    static String suffixOf(@NonNull String path) {
+        return path.substring(path.lastIndexOf('.') + 1).toLowerCase();
     }
 
     /**
@@ -198,39 +959,222 @@ public class FileSaver {
         return type;
     }
 
+    @NonNull
+    private static String suffixFromMimeType(@NonNull String mimeType, boolean isVideo) {
+        String suffix = MimeTypeMap.getSingleton().getExtensionFromMimeType(mimeType);
+        if (suffix != null) return suffix;
+        return isVideo ? "mp4" : "jpg";
+    }
+
     /**
-     * Копирует байты из файла по пути filePath в OutputStream.
+     * Размер содержимого content:// uri из OpenableColumns.SIZE, -1 если неизвестен.
      */
-    private static boolean saveToStream(
-            @NonNull String filePath,
-            @NonNull OutputStream outputStream
-    ) {
-        try (InputStream in = new FileInputStream(new File(filePath))) {
-            byte[] buf = new byte[8192];
-            int len;
-            while ((len = in.read(buf)) > 0) {
-                outputStream.write(buf, 0, len);
-            }
-            return true;
-        } catch (IOException e) {
+    private static long contentSize(@NonNull ContentResolver resolver, @NonNull Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst() && !cursor.isNull(0)) return cursor.getLong(0);
+        } catch (RuntimeException e) {
             e.printStackTrace();
-            return false;
         }
+        return -1;
+    }
+
+    @NonNull
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat compressFormatFromSuffix(@NonNull String suffix) {
+        if ("png".equalsIgnoreCase(suffix)) return Bitmap.CompressFormat.PNG;
+        if ("webp".equalsIgnoreCase(suffix)) {
+            return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                    ? Bitmap.CompressFormat.WEBP_LOSSY
+                    : Bitmap.CompressFormat.WEBP;
+        }
+        return Bitmap.CompressFormat.JPEG;
     }
 
     /**
-     * Сжимает Bitmap и записывает его в OutputStream.
+     * Копирует файл в канал порциями через FileChannel.transferTo (без копирования
+     * в память процесса). Если канал не поддерживает transferTo, остаток
+     * дописывается через один большой direct-буфер. Между порциями проверяется
+     * отмена и сообщается прогресс. Возвращает число записанных байт.
      */
-    private static boolean saveBitmapToStream(
-            @NonNull Bitmap bitmap,
-            @Nullable OutputStream out
-    ) {
-        if (out == null) return false;
-        bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
+    static long copyFile(
+            @NonNull File source,
+            @NonNull FileChannel out,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) throws IOException {
+        return copyFile(source, out, 0, signal, listener);
+    }
+
+    /**
+     * Копирует файл, начиная с байта startPosition (out должен стоять на той же позиции).
+     * Возвращает позицию после последнего записанного байта.
+     */
+    static long copyFile(
+            @NonNull File source,
+            @NonNull FileChannel out,
+            long startPosition,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener
+    ) throws IOException {
+        return copyFile(source, out, startPosition, signal, listener, null);
+    }
+
+    /**
+     * То же, но если передан digest, записанные байты добавляются в него.
+     * transferTo идёт мимо памяти процесса, поэтому с digest копирование
+     * выполняется через буфер: каждый байт читается один раз.
+     */
+    static long copyFile(
+            @NonNull File source,
+            @NonNull FileChannel out,
+            long startPosition,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener,
+            @Nullable MessageDigest digest
+    ) throws IOException {
+        long start = Metrics.start();
+        try (FileInputStream in = new FileInputStream(source)) {
+            FileChannel inChannel = in.getChannel();
+            long size = inChannel.size();
+            long position = startPosition;
+            while (digest == null && position < size) {
+                if (signal != null) signal.throwIfCanceled();
+                long transferred = inChannel.transferTo(position,
+                        Math.min(TRANSFER_CHUNK_SIZE, size - position), out);
+                if (transferred <= 0) break;
+                position += transferred;
+                if (listener != null) listener.onProgress(position, size);
+            }
+            if (position < size) {
+                inChannel.position(position);
+                position = copyBuffered(inChannel, out, position, size, signal, listener, digest);
+            }
+            Metrics.recordBytes(Metrics.COPY, position - startPosition, System.nanoTime() - start);
+            return position;
+        }
+    }
+
+    private static long copyBuffered(
+            @NonNull FileChannel in,
+            @NonNull FileChannel out,
+            long position,
+            long size,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener,
+            @Nullable MessageDigest digest
+    ) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+        while (in.read(buffer) > 0) {
+            if (signal != null) signal.throwIfCanceled();
+            buffer.flip();
+            if (digest != null) {
+                digest.update(buffer);
+                buffer.rewind();
+            }
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer);
+            }
+            buffer.clear();
+            if (listener != null) listener.onProgress(position, size);
+        }
+        return position;
+    }
+
+    /**
+     * Копирует поток в канал через буфер, по ходу обновляя digest (если передан).
+     * total < 0 — размер неизвестен. Возвращает число записанных байт.
+     */
+    private static long copyStream(
+            @NonNull InputStream in,
+            @NonNull FileChannel out,
+            long total,
+            @Nullable CancellationSignal signal,
+            @Nullable ProgressListener listener,
+            @Nullable MessageDigest digest
+    ) throws IOException {
+        long start = Metrics.start();
+        byte[] bytes = new byte[total > 0 ? (int) Math.min(total, COPY_BUFFER_SIZE) : COPY_BUFFER_SIZE];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long position = 0;
+        int read;
+        while ((read = in.read(bytes)) > 0) {
+            if (signal != null) signal.throwIfCanceled();
+            if (digest != null) digest.update(bytes, 0, read);
+            buffer.clear();
+            buffer.limit(read);
+            while (buffer.hasRemaining()) {
+                position += out.write(buffer);
+            }
+            if (listener != null) listener.onProgress(position, total);
+        }
+        Metrics.recordBytes(Metrics.COPY, position, System.nanoTime() - start);
+        return position;
+    }
+
+    @NonNull
+    private static String digestOf(@NonNull InputStream in, @Nullable CancellationSignal signal) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] bytes = new byte[COPY_BUFFER_SIZE];
+        int read;
+        while ((read = in.read(bytes)) > 0) {
+            if (signal != null) signal.throwIfCanceled();
+            digest.update(bytes, 0, read);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * SHA-256 файла одним чтением через буфер (для проверки дубликата до записи).
+     */
+    @NonNull
+    private static String digestOf(@NonNull File source, @Nullable CancellationSignal signal) throws IOException {
+        MessageDigest digest = newDigest();
+        try (FileInputStream in = new FileInputStream(source)) {
+            FileChannel channel = in.getChannel();
+            ByteBuffer buffer = ByteBuffer.allocateDirect(COPY_BUFFER_SIZE);
+            while (channel.read(buffer) > 0) {
+                if (signal != null) signal.throwIfCanceled();
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        return toHex(digest.digest());
+    }
+
+    @NonNull
+    private static MessageDigest newDigest() {
         try {
-            out.close();
-            return true;
-        } catch (IOException e) {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // SHA-256 есть на всех версиях Android
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @NonNull
+    private static String toHex(@NonNull byte[] bytes) {
+        char[] digits = "0123456789abcdef".toCharArray();
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = digits[(bytes[i] >> 4) & 0xf];
+            hex[i * 2 + 1] = digits[bytes[i] & 0xf];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Существует ли ещё сохранённый файл (и не изменился ли его размер).
+     */
+    private static boolean isSaved(@NonNull Context context, @NonNull Uri uri, long size) {
+        if ("file".equals(uri.getScheme())) {
+            File file = new File(uri.getPath());
+            return file.isFile() && file.length() == size;
+        }
+        try (Cursor cursor = context.getContentResolver().query(uri,
+                new String[]{MediaStore.MediaColumns.SIZE}, null, null, null)) {
+            return cursor != null && cursor.moveToFirst() && cursor.getLong(0) == size;
+        } catch (RuntimeException e) {
             e.printStackTrace();
             return false;
         }
@@ -0,0 +1,163 @@
+package com.chavesgu.images_picker;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.MemoryCategory;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.load.engine.bitmap_recycle.LruBitmapPool;
+import com.bumptech.glide.load.engine.cache.DiskCache;
+import com.bumptech.glide.load.engine.cache.ExternalPreferredCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.InternalCacheDiskCacheFactory;
+import com.bumptech.glide.load.engine.cache.LruResourceCache;
+
+import java.lang.reflect.Field;
+
+import io.flutter.plugin.common.MethodCall;
+
+/**
+ * Настройки Glide для окна выбора: размеры кэшей, расположение дискового кэша,
+ * формат декодирования плиток и категория памяти.
+ * <p>
+ * Библиотеке нельзя объявлять свой AppGlideModule (он конфликтует с модулем
+ * приложения), поэтому размеры кэшей применяются через Glide.init с GlideBuilder,
+ * и только пока Glide ещё не создан: экземпляр Glide общий для всего процесса,
+ * его пересоздание сломало бы RequestManager'ы приложения.
+ * Модуль приложения, если он есть, всё равно применяется поверх этих настроек.
+ */
+public class GlideConfig {
+    // 0 — размер по умолчанию (MemorySizeCalculator / 250 МБ на диске)
+    public final long memoryCacheBytes;
+    public final long bitmapPoolBytes;
+    public final long diskCacheBytes;
+    // "DiskCacheLocation.internal" или "DiskCacheLocation.external"
+    public final String diskCacheLocation;
+    public final String diskCacheName;
+    // декодировать плитки и обложки альбомов в RGB_565 (вдвое меньше памяти)
+    public final boolean lowMemoryDecode;
+    public final String memoryCategory;
+    // плитки сетки из системных превью MediaStore вместо декодирования оригиналов
+    public final boolean systemThumbnails;
+
+    private static volatile GlideConfig current = new GlideConfig(0, 0, 0,
+            "DiskCacheLocation.internal", DiskCache.Factory.DEFAULT_DISK_CACHE_DIR, false, "ImageMemoryCategory.normal", false);
+
+    public GlideConfig(long memoryCacheBytes, long bitmapPoolBytes, long diskCacheBytes,
+                       @NonNull String diskCacheLocation, @NonNull String diskCacheName,
+                       boolean lowMemoryDecode, @NonNull String memoryCategory, boolean systemThumbnails) {
+        this.memoryCacheBytes = memoryCacheBytes;
+        this.bitmapPoolBytes = bitmapPoolBytes;
+        this.diskCacheBytes = diskCacheBytes;
+        this.diskCacheLocation = diskCacheLocation;
+        this.diskCacheName = diskCacheName;
+        this.lowMemoryDecode = lowMemoryDecode;
+        this.memoryCategory = memoryCategory;
+        this.systemThumbnails = systemThumbnails;
+    }
+
+    public static GlideConfig fromCall(@NonNull MethodCall call) {
+        Number memoryCacheBytes = call.argument("memoryCacheBytes");
+        Number bitmapPoolBytes = call.argument("bitmapPoolBytes");
+        Number diskCacheBytes = call.argument("diskCacheBytes");
+        String diskCacheLocation = call.argument("diskCacheLocation");
+        String diskCacheName = call.argument("diskCacheName");
+        Boolean lowMemoryDecode = call.argument("lowMemoryDecode");
+        String memoryCategory = call.argument("memoryCategory");
+        Boolean systemThumbnails = call.argument("systemThumbnails");
+        return new GlideConfig(
+                memoryCacheBytes != null ? memoryCacheBytes.longValue() : 0,
+                bitmapPoolBytes != null ? bitmapPoolBytes.longValue() : 0,
+                diskCacheBytes != null ? diskCacheBytes.longValue() : 0,
+                diskCacheLocation != null ? diskCacheLocation : "DiskCacheLocation.internal",
+                diskCacheName != null ? diskCacheName : DiskCache.Factory.DEFAULT_DISK_CACHE_DIR,
+                lowMemoryDecode != null && lowMemoryDecode,
+                memoryCategory != null ? memoryCategory : "ImageMemoryCategory.normal",
+                systemThumbnails != null && systemThumbnails);
+    }
+
+    @NonNull
+    public static GlideConfig current() {
+        return current;
+    }
+
+    /**
+     * Запоминает настройки. Размеры кэшей применяются, только если Glide ещё
+     * не создан (ни приложением, ни плагином); уже созданный Glide не пересоздаётся.
+     * Возвращает false, если заданные размеры кэшей применить не удалось.
+     */
+    public static boolean apply(@NonNull Context context, @NonNull GlideConfig config) {
+        current = config;
+        boolean applied = config.hasDefaultCaches();
+        if (!applied) {
+            // Glide.get создаёт экземпляр под тем же монитором
+            synchronized (Glide.class) {
+                if (!isGlideInitialized()) {
+                    Glide.init(context, config.toBuilder(context));
+                    applied = true;
+                }
+            }
+        }
+        Glide.get(context).setMemoryCategory(config.memoryCategory());
+        return applied;
+    }
+
+    /**
+     * Формат декодирования для плиток сетки и обложек альбомов.
+     */
+    @NonNull
+    public DecodeFormat gridDecodeFormat() {
+        return lowMemoryDecode ? DecodeFormat.PREFER_RGB_565 : DecodeFormat.DEFAULT;
+    }
+
+    private boolean hasDefaultCaches() {
+        return memoryCacheBytes == 0
+                && bitmapPoolBytes == 0
+                && diskCacheBytes == 0
+                && "DiskCacheLocation.internal".equals(diskCacheLocation)
+                && DiskCache.Factory.DEFAULT_DISK_CACHE_DIR.equals(diskCacheName);
+    }
+
+    /**
+     * Публичного способа проверить это у Glide нет, поэтому читается его
+     * статическое поле. Если поле недоступно (обфускация, другая версия Glide),
+     * считаем, что Glide уже создан, и ничего не пересоздаём.
+     */
+    private static boolean isGlideInitialized() {
+        try {
+            Field field = Glide.class.getDeclaredField("glide");
+            field.setAccessible(true);
+            return field.get(null) != null;
+        } catch (NoSuchFieldException | IllegalAccessException | RuntimeException e) {
+            return true;
+        }
+    }
+
+    @NonNull
+    private GlideBuilder toBuilder(@NonNull Context context) {
+        GlideBuilder builder = new GlideBuilder();
+        if (memoryCacheBytes > 0) builder.setMemoryCache(new LruResourceCache(memoryCacheBytes));
+        if (bitmapPoolBytes > 0) builder.setBitmapPool(new LruBitmapPool(bitmapPoolBytes));
+        long diskBytes = diskCacheBytes > 0 ? diskCacheBytes : DiskCache.Factory.DEFAULT_DISK_CACHE_SIZE;
+        if ("DiskCacheLocation.external".equals(diskCacheLocation)) {
+            builder.setDiskCache(new ExternalPreferredCacheDiskCacheFactory(context, diskCacheName, diskBytes));
+        } else {
+            builder.setDiskCache(new InternalCacheDiskCacheFactory(context, diskCacheName, diskBytes));
+        }
+        return builder;
+    }
+
+    @NonNull
+    private MemoryCategory memoryCategory() {
+        switch (memoryCategory) {
+            case "ImageMemoryCategory.low":
+                return MemoryCategory.LOW;
+            case "ImageMemoryCategory.high":
+                return MemoryCategory.HIGH;
+            default:
+                return MemoryCategory.NORMAL;
+        }
+    }
+}
@@ -1,16 +1,26 @@
 package com.chavesgu.images_picker;
 
+import android.Manifest;
+import android.content.ContentUris;
 import android.content.Context;
-import android.graphics.Bitmap;
+import android.content.pm.PackageManager;
+import android.graphics.BitmapFactory;
 import android.graphics.PointF;
 import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.os.Build;
+import android.provider.MediaStore;
 import android.view.View;
 import android.widget.ImageView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
 import com.bumptech.glide.request.RequestOptions;
-import com.bumptech.glide.request.target.BitmapImageViewTarget;
-import com.bumptech.glide.request.target.ImageViewTarget;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.load.resource.bitmap.RoundedCorners;
+import com.bumptech.glide.request.target.CustomViewTarget;
+import com.bumptech.glide.request.transition.Transition;
 import com.luck.picture.lib.engine.ImageEngine;
 import com.luck.picture.lib.listener.OnImageCompleteCallback;
 import com.luck.picture.lib.tools.MediaUtils;
@@ -20,10 +30,29 @@ import com.luck.picture.lib.widget.longimage.SubsamplingScaleImageView;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.graphics.drawable.RoundedBitmapDrawable;
-import androidx.core.graphics.drawable.RoundedBitmapDrawableFactory;
+import androidx.core.content.ContextCompat;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 public class GlideEngine implements ImageEngine {
+    // 封面按 sizeMultiplier 缩小一半解码, 4px 圆角显示时约为 8px
+    private static final int FOLDER_CORNER_RADIUS = 4;
+    private static final int MAX_PRELOAD_COVERS = 32;
+    // 预加载封面时最多读取的记录数 (按时间倒序), 超出部分的相册由 PictureSelector 正常加载
+    private static final int MAX_PRELOAD_SCAN_ROWS = 2000;
+    // 长图判断时读取图片尺寸; 空闲时线程退出
+    private static final ThreadPoolExecutor BOUNDS_EXECUTOR = new ThreadPoolExecutor(1, 1,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        BOUNDS_EXECUTOR.allowCoreThreadTimeOut(true);
+    }
 
     /**
      * 加载图片
@@ -53,13 +82,18 @@ public class GlideEngine implements ImageEngine {
     public void loadImage(@NonNull Context context, @NonNull String url,
                           @NonNull final ImageView imageView,
                           final SubsamplingScaleImageView longImageView, final OnImageCompleteCallback callback) {
+        // 先只下载文件并读取尺寸: 长图交给 SubsamplingScaleImageView 按需分块解码,
+        // 普通图片再走 Glide 的 bitmap 流程. 读取尺寸要访问磁盘, 放在后台线程
         Glide.with(context)
-                .asBitmap()
+                .asFile()
                 .load(url)
-                .into(new ImageViewTarget<Bitmap>(imageView) {
+                .into(new CustomViewTarget<SubsamplingScaleImageView, File>(longImageView) {
+                    // 每次新的加载或清除都会递增, 过期的尺寸结果直接丢弃
+                    private int generation;
+
                     @Override
-                    public void onLoadStarted(@Nullable Drawable placeholder) {
-                        super.onLoadStarted(placeholder);
+                    protected void onResourceLoading(@Nullable Drawable placeholder) {
+                        generation++;
                         if (callback != null) {
                             callback.onShowLoading();
                         }
@@ -67,41 +101,58 @@ public class GlideEngine implements ImageEngine {
 
                     @Override
                     public void onLoadFailed(@Nullable Drawable errorDrawable) {
-                        super.onLoadFailed(errorDrawable);
                         if (callback != null) {
                             callback.onHideLoading();
                         }
                     }
 
                     @Override
-                    protected void setResource(@Nullable Bitmap resource) {
-                        if (callback != null) {
-                            callback.onHideLoading();
-                        }
-                        if (resource != null) {
-                            boolean eqLongImage = MediaUtils.isLongImg(resource.getWidth(),
-                                    resource.getHeight());
-                            longImageView.setVisibility(eqLongImage ? View.VISIBLE : View.GONE);
-                            imageView.setVisibility(eqLongImage ? View.GONE : View.VISIBLE);
-                            if (eqLongImage) {
-                                // 加载长图
-                                longImageView.setQuickScaleEnabled(true);
-                                longImageView.setZoomEnabled(true);
-                                longImageView.setPanEnabled(true);
-                                longImageView.setDoubleTapZoomDuration(100);
-                                longImageView.setMinimumScaleType(SubsamplingScaleImageView.SCALE_TYPE_CENTER_CROP);
-                                longImageView.setDoubleTapZoomDpi(SubsamplingScaleImageView.ZOOM_FOCUS_CENTER);
-                                longImageView.setImage(ImageSource.bitmap(resource),
-                                        new ImageViewState(0, new PointF(0, 0), 0));
-                            } else {
-                                // 普通图片
-                                imageView.setImageBitmap(resource);
-                            }
-                        }
+                    public void onResourceReady(@NonNull final File resource, @Nullable Transition<? super File> transition) {
+                        final int current = generation;
+                        BOUNDS_EXECUTOR.execute(() -> {
+                            BitmapFactory.Options options = new BitmapFactory.Options();
+                            options.inJustDecodeBounds = true;
+                            BitmapFactory.decodeFile(resource.getAbsolutePath(), options);
+                            final boolean eqLongImage = MediaUtils.isLongImg(options.outWidth, options.outHeight);
+                            longImageView.post(() -> {
+                                if (current != generation) return;
+                                if (callback != null) {
+                                    callback.onHideLoading();
+                                }
+                                showImage(context, resource, eqLongImage, imageView, longImageView);
+                            });
+                        });
+                    }
+
+                    @Override
+                    protected void onResourceCleared(@Nullable Drawable placeholder) {
+                        generation++;
                     }
                 });
     }
 
+    private static void showImage(@NonNull Context context, @NonNull File resource, boolean eqLongImage,
+                                  @NonNull ImageView imageView, @NonNull SubsamplingScaleImageView longImageView) {
+        longImageView.setVisibility(eqLongImage ? View.VISIBLE : View.GONE);
+        imageView.setVisibility(eqLongImage ? View.GONE : View.VISIBLE);
+        if (eqLongImage) {
+            // 加载长图
+            longImageView.setQuickScaleEnabled(true);
+            longImageView.setZoomEnabled(true);
+            longImageView.setPanEnabled(true);
+            longImageView.setDoubleTapZoomDuration(100);
+            longImageView.setMinimumScaleType(SubsamplingScaleImageView.SCALE_TYPE_CENTER_CROP);
+            longImageView.setDoubleTapZoomDpi(SubsamplingScaleImageView.ZOOM_FOCUS_CENTER);
+            longImageView.setImage(ImageSource.uri(Uri.fromFile(resource)),
+                    new ImageViewState(0, new PointF(0, 0), 0));
+        } else {
+            // 普通图片
+            Glide.with(context)
+                    .load(resource)
+                    .into(imageView);
+        }
+    }
+
     /**
      * 加载相册目录
      *
@@ -111,22 +162,55 @@ public class GlideEngine implements ImageEngine {
      */
     @Override
     public void loadFolderImage(@NonNull final Context context, @NonNull String url, @NonNull final ImageView imageView) {
-        Glide.with(context)
-                .asBitmap()
+        folderRequest(context, url).into(imageView);
+    }
+
+    /**
+     * 相册封面: 裁剪和圆角都在 Glide 的变换中完成, 结果进入内存和磁盘缓存
+     * (加载和预加载使用同一请求, 缓存键一致)
+     */
+    private static RequestBuilder<Drawable> folderRequest(@NonNull Context context, @NonNull String url) {
+        return Glide.with(context)
                 .load(url)
                 .override(180, 180)
-                .centerCrop()
                 .sizeMultiplier(0.5f)
-                .into(new BitmapImageViewTarget(imageView) {
-                    @Override
-                    protected void setResource(Bitmap resource) {
-                        RoundedBitmapDrawable circularBitmapDrawable =
-                                RoundedBitmapDrawableFactory.
-                                        create(context.getResources(), resource);
-                        circularBitmapDrawable.setCornerRadius(8);
-                        imageView.setImageDrawable(circularBitmapDrawable);
-                    }
-                });
+                .transform(new CenterCrop(), new RoundedCorners(FOLDER_CORNER_RADIUS))
+                .format(GlideConfig.current().gridDecodeFormat());
+    }
+
+    /**
+     * 在打开相册前预加载各相册封面 (每个相册最新的一张), 需在后台线程调用
+     * 不扫描整个媒体库: 优先使用 MediaQuery 已缓存的相册列表, 否则只读取最新的
+     * MAX_PRELOAD_SCAN_ROWS 条记录, 每个相册取一张, 最多 MAX_PRELOAD_COVERS 个
+     *
+     * @param context 上下文
+     * @param images  是否包含图片
+     * @param videos  是否包含视频
+     */
+    public static void preloadFolderCovers(@NonNull Context context, boolean images, boolean videos) {
+        if (ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE)
+                != PackageManager.PERMISSION_GRANTED) {
+            return;
+        }
+        Context appContext = context.getApplicationContext();
+        for (String url : folderCoverUrls(appContext, images, videos)) {
+            folderRequest(appContext, url).preload();
+        }
+    }
+
+    /**
+     * 封面地址与 PictureSelector 一致: Android Q 及以上为 MediaStore.Files 的 content uri, 以下为文件路径
+     */
+    private static List<String> folderCoverUrls(@NonNull Context context, boolean images, boolean videos) {
+        List<String> covers = new ArrayList<>();
+        Uri filesUri = MediaStore.Files.getContentUri("external");
+        for (HashMap<String, Object> album : MediaQuery.queryLatestCovers(context, images, videos,
+                MAX_PRELOAD_COVERS, MAX_PRELOAD_SCAN_ROWS)) {
+            covers.add(Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+                    ? ContentUris.withAppendedId(filesUri, (long) album.get("coverId")).toString()
+                    : (String) album.get("coverPath"));
+        }
+        return covers;
     }
 
     /**
@@ -138,10 +222,27 @@ public class GlideEngine implements ImageEngine {
      */
     @Override
     public void loadGridImage(@NonNull Context context, @NonNull String url, @NonNull ImageView imageView) {
-        Glide.with(context)
+        GlideConfig config = GlideConfig.current();
+        RequestBuilder<Drawable> original = Glide.with(context)
                 .load(url)
                 .override(200, 200)
                 .centerCrop()
+                .format(config.gridDecodeFormat());
+        if (!config.systemThumbnails) {
+            original.into(imageView);
+            return;
+        }
+        // 使用系统缩略图: 先加载极小的预览, 再加载格子图片;
+        // 只有系统没有缩略图时才解码原图
+        MediaStoreThumbnailLoader.register(context);
+        Glide.with(context)
+                .load(new MediaStoreThumbnail(url))
+                .override(200, 200)
+                .centerCrop()
+                .format(config.gridDecodeFormat())
+                .diskCacheStrategy(DiskCacheStrategy.RESOURCE)
+                .thumbnail(0.1f)
+                .error(original)
                 .into(imageView);
     }
 
@@ -0,0 +1,185 @@
+package com.chavesgu.images_picker;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Сжатие картинки до заданного размера в байтах.
+ * <p>
+ * Картинка декодируется сразу уменьшенной (inSampleSize), затем бинарным поиском
+ * подбирается максимальное качество, при котором размер не больше maxBytes.
+ * Если даже минимальное качество не помещается, уменьшаются размеры и поиск повторяется.
+ * <p>
+ * PNG, WebP и картинки с прозрачностью сжимаются в lossy WebP (прозрачность сохраняется),
+ * остальные — в JPEG; расширение и mimeType результата соответствуют формату.
+ */
+public class ImageCompressor {
+    static final int MIN_QUALITY = 30;
+    // 71 значение качества (30..100): бинарному поиску нужно 7 шагов
+    static final int MAX_QUALITY_STEPS = 7;
+    private static final int MAX_SCALE_STEPS = 4;
+    // грубая оценка размера JPEG среднего качества на пиксель
+    private static final double ESTIMATED_BYTES_PER_PIXEL = 0.3;
+
+    public static class Result {
+        public final String path;
+        public final String mimeType;
+        public final long size;
+        public final int quality;
+        public final int width;
+        public final int height;
+
+        Result(String path, String mimeType, long size, int quality, int width, int height) {
+            this.path = path;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.quality = quality;
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    /**
+     * Возвращает null, если файл уже не больше maxBytes или его не удалось декодировать.
+     */
+    @Nullable
+    public static Result compress(@NonNull Context context, @NonNull String path, long maxBytes, int maxQuality) {
+        File source = new File(path);
+        if (maxBytes <= 0 || source.length() <= maxBytes) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSizeFor(options.outWidth, options.outHeight, maxBytes);
+        Bitmap bitmap = BitmapFactory.decodeFile(path, options);
+        if (bitmap == null) return null;
+        // JPEG без EXIF теряет ориентацию, поэтому поворачиваем пиксели заранее
+        bitmap = Thumbnails.rotate(bitmap, MediaInfo.imageOrientation(path));
+
+        boolean webp = bitmap.hasAlpha() || "image/png".equals(options.outMimeType)
+                || "image/webp".equals(options.outMimeType);
+        Bitmap.CompressFormat format = webp ? webpFormat() : Bitmap.CompressFormat.JPEG;
+        int quality = Math.max(MIN_QUALITY, Math.min(webp ? maxWebpQuality() : 100, maxQuality));
+        Buffers buffers = new Buffers((int) Math.min(maxBytes,
+                (long) (bitmap.getWidth() * (double) bitmap.getHeight() * ESTIMATED_BYTES_PER_PIXEL) + 1));
+        int bestQuality = -1;
+        for (int step = 0; step < MAX_SCALE_STEPS && bestQuality < 0; step++) {
+            final Bitmap current = bitmap;
+            bestQuality = searchQuality((q, stream) -> current.compress(format, q, stream), quality, maxBytes, buffers);
+            if (bestQuality < 0) {
+                // при минимальном качестве всё ещё много: уменьшаем размеры
+                ByteArrayOutputStream out = buffers.out;
+                out.reset();
+                bitmap.compress(format, MIN_QUALITY, out);
+                float scale = (float) Math.sqrt((double) maxBytes / out.size()) * 0.95f;
+                scale = Math.max(0.5f, Math.min(0.9f, scale));
+                bitmap = Thumbnails.scaleDown(bitmap,
+                        Math.max(1, (int) (bitmap.getWidth() * scale)),
+                        Math.max(1, (int) (bitmap.getHeight() * scale)));
+                if (step == MAX_SCALE_STEPS - 1) {
+                    // не уложились — отдаём минимально возможный результат
+                    buffers.best = out;
+                    out.reset();
+                    bitmap.compress(format, MIN_QUALITY, out);
+                    bestQuality = MIN_QUALITY;
+                }
+            }
+        }
+
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        bitmap.recycle();
+        try {
+            File outputFile = new File(context.getCacheDir(),
+                    "image_picker_compress_" + UUID.randomUUID() + (webp ? ".webp" : ".jpg"));
+            try (FileOutputStream fo = new FileOutputStream(outputFile)) {
+                buffers.best.writeTo(fo);
+            }
+            return new Result(outputFile.getAbsolutePath(), webp ? "image/webp" : "image/jpeg",
+                    outputFile.length(), bestQuality, width, height);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    interface Encoder {
+        void encode(int quality, @NonNull ByteArrayOutputStream out);
+    }
+
+    /**
+     * out — черновой буфер, best — лучший результат, помещающийся в лимит.
+     * Буферы растут по мере надобности; best появляется только после первого попадания.
+     */
+    static class Buffers {
+        ByteArrayOutputStream out;
+        ByteArrayOutputStream best;
+
+        Buffers(int initialCapacity) {
+            out = new ByteArrayOutputStream(initialCapacity);
+        }
+    }
+
+    /**
+     * Бинарный поиск максимального качества из [MIN_QUALITY, maxQuality], при котором
+     * результат не больше maxBytes, не больше MAX_QUALITY_STEPS кодирований.
+     * Возвращает -1, если не подошло ни одно; иначе результат лежит в buffers.best.
+     */
+    static int searchQuality(@NonNull Encoder encoder, int maxQuality, long maxBytes, @NonNull Buffers buffers) {
+        int bestQuality = -1;
+        int low = MIN_QUALITY;
+        int high = maxQuality;
+        for (int i = 0; i < MAX_QUALITY_STEPS && low <= high; i++) {
+            int mid = (low + high + 1) / 2;
+            buffers.out.reset();
+            encoder.encode(mid, buffers.out);
+            if (buffers.out.size() <= maxBytes) {
+                ByteArrayOutputStream tmp = buffers.best != null
+                        ? buffers.best : new ByteArrayOutputStream(buffers.out.size());
+                buffers.best = buffers.out;
+                buffers.out = tmp;
+                bestQuality = mid;
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return bestQuality;
+    }
+
+    @SuppressWarnings("deprecation")
+    private static Bitmap.CompressFormat webpFormat() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                ? Bitmap.CompressFormat.WEBP_LOSSY : Bitmap.CompressFormat.WEBP;
+    }
+
+    /**
+     * Старый WEBP с качеством 100 на API 29 пишет lossless, который не уменьшается подбором качества.
+     */
+    private static int maxWebpQuality() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.R ? 100 : 99;
+    }
+
+    static int sampleSizeFor(int width, int height, long maxBytes) {
+        int sampleSize = 1;
+        // декодируем с запасом в 4 раза: дальше точность обеспечивает подбор качества
+        while ((double) (width / (sampleSize * 2)) * (height / (sampleSize * 2)) * ESTIMATED_BYTES_PER_PIXEL > maxBytes * 4) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+}
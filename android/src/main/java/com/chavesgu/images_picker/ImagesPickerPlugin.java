@@ -2,24 +2,26 @@ package com.chavesgu.images_picker;
 
 import android.Manifest;
 import android.app.Activity;
+import android.content.ActivityNotFoundException;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
+import android.media.MediaMetadataRetriever;
 import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.os.Environment;
 import android.os.Handler;
+import android.os.Looper;
 import android.os.Message;
 import android.os.ParcelFileDescriptor;
 import android.provider.MediaStore;
-import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -31,8 +33,19 @@ import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -43,6 +56,7 @@ import android.content.pm.PackageManager; // Для PERMISSION_GRANTED
 import io.flutter.embedding.engine.plugins.FlutterPlugin;
 import io.flutter.embedding.engine.plugins.activity.ActivityAware;
 import io.flutter.embedding.engine.plugins.activity.ActivityPluginBinding;
+import io.flutter.plugin.common.EventChannel;
 import io.flutter.plugin.common.MethodCall;
 import io.flutter.plugin.common.MethodChannel;
 import io.flutter.plugin.common.MethodChannel.MethodCallHandler;
@@ -62,55 +76,224 @@ import com.luck.picture.lib.tools.PictureFileUtils;
  * ImagesPickerPlugin переведён на FlutterEmbedding V2 API.
  * Убираем старый регистратор Registrar и используем FlutterPlugin + ActivityAware.
  */
-public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodCallHandler, PluginRegistry.RequestPermissionsResultListener {
+public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodCallHandler,
+        PluginRegistry.RequestPermissionsResultListener, PluginRegistry.ActivityResultListener {
     private static final String CHANNEL_NAME = "chavesgu/images_picker";
+    private static final String PICK_STREAM_CHANNEL_NAME = "chavesgu/images_picker/pick_stream";
+    private static final String SAVE_PROGRESS_CHANNEL_NAME = "chavesgu/images_picker/save_progress";
+    private static final String MEDIA_CHANGES_CHANNEL_NAME = "chavesgu/images_picker/media_changes";
+    private static final int DEFAULT_MAX_CONCURRENT_SAVES = 2;
 
     private MethodChannel channel;
+    private EventChannel pickStreamChannel;
+    private EventChannel.EventSink pickEventSink;
+    private EventChannel saveProgressChannel;
+    private EventChannel mediaChangesChannel;
+    private MediaChangeFeed mediaChangeFeed;
+    private EventChannel.EventSink saveProgressSink;
+    private final ConcurrentHashMap<Integer, SaveOperation> saveOperations = new ConcurrentHashMap<>();
     private Context context;
     private Activity activity;
-    private Result pendingResult;
+    private Handler mainHandler;
+    private ExecutorService workerPool;
+    private ThreadPoolExecutor ioExecutor;
+    private ThumbnailCache thumbnailCache;
+    private ThumbnailLoader thumbnailLoader;
 
-    private int WRITE_IMAGE_CODE = 33;
-    private int WRITE_VIDEO_CODE = 44;
-    private String WRITE_IMAGE_PATH;
-    private String WRITE_VIDEO_PATH;
-    private String ALBUM_NAME;
+    // коды запросов разрешений: PERMISSION_REQUEST_BASE .. PERMISSION_REQUEST_BASE + 255
+    private static final int PERMISSION_REQUEST_BASE = 0x3300;
+    private static final String[] STORAGE_PERMISSIONS = new String[]{
+            Manifest.permission.WRITE_EXTERNAL_STORAGE, Manifest.permission.READ_EXTERNAL_STORAGE};
+
+    // съёмка системной камерой прямо в альбом (openCamera с albumName)
+    private static final int CAMERA_REQUEST_CODE = 0x3400;
+    // текущая съёмка; доступ только с главного потока
+    private PendingCapture pendingCapture;
+
+    // ожидающие разрешения запросы по коду запроса; доступ только с главного потока
+    private final LinkedHashMap<Integer, PendingRequest> pendingRequests = new LinkedHashMap<>();
+    private int nextRequestCode = 0;
+    private boolean permissionRequestInFlight = false;
+
+    /**
+     * Запрос со своими аргументами и Result, ожидающий разрешения на доступ к хранилищу.
+     */
+    private static class PendingRequest {
+        final Runnable onGranted;
+        final Runnable onDenied;
+
+        PendingRequest(Runnable onGranted, Runnable onDenied) {
+            this.onGranted = onGranted;
+            this.onDenied = onDenied;
+        }
+    }
+
+    /**
+     * Съёмка в заранее созданную запись галереи: uri появляется после insert.
+     */
+    private static class PendingCapture {
+        final boolean isVideo;
+        final PickOptions options;
+        final Result result;
+        Uri uri;
+
+        PendingCapture(boolean isVideo, PickOptions options, Result result) {
+            this.isVideo = isVideo;
+            this.options = options;
+            this.result = result;
+        }
+    }
 
     @Override
     public void onAttachedToEngine(@NonNull FlutterPluginBinding flutterPluginBinding) {
         context = flutterPluginBinding.getApplicationContext();
         channel = new MethodChannel(flutterPluginBinding.getBinaryMessenger(), CHANNEL_NAME);
         channel.setMethodCallHandler(this);
+        pickStreamChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), PICK_STREAM_CHANNEL_NAME);
+        pickStreamChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                pickEventSink = events;
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                pickEventSink = null;
+            }
+        });
+        saveProgressChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), SAVE_PROGRESS_CHANNEL_NAME);
+        saveProgressChannel.setStreamHandler(new EventChannel.StreamHandler() {
+            @Override
+            public void onListen(Object arguments, EventChannel.EventSink events) {
+                saveProgressSink = events;
+            }
+
+            @Override
+            public void onCancel(Object arguments) {
+                saveProgressSink = null;
+            }
+        });
+        mainHandler = new Handler(Looper.getMainLooper());
+        workerPool = createWorkerPool();
+        ioExecutor = createIoExecutor(DEFAULT_MAX_CONCURRENT_SAVES);
+        thumbnailCache = new ThumbnailCache(context.getCacheDir(), ThumbnailCache.DEFAULT_MAX_BYTES);
+        thumbnailLoader = new ThumbnailLoader(thumbnailCache, workerPool);
+        // сохранения, прерванные падением процесса: докопировать или удалить
+        final Context appContext = context;
+        ioExecutor.execute(() -> FileSaver.recoverPendingSaves(appContext));
+        mediaChangeFeed = new MediaChangeFeed(context, mainHandler);
+        mediaChangesChannel = new EventChannel(flutterPluginBinding.getBinaryMessenger(), MEDIA_CHANGES_CHANNEL_NAME);
+        mediaChangesChannel.setStreamHandler(mediaChangeFeed);
     }
 
     @Override
     public void onDetachedFromEngine(@NonNull FlutterPluginBinding binding) {
+        failPendingPermissionRequests();
         channel.setMethodCallHandler(null);
         channel = null;
+        pickStreamChannel.setStreamHandler(null);
+        pickStreamChannel = null;
+        pickEventSink = null;
+        saveProgressChannel.setStreamHandler(null);
+        saveProgressChannel = null;
+        mediaChangesChannel.setStreamHandler(null);
+        mediaChangesChannel = null;
+        mediaChangeFeed.stop();
+        mediaChangeFeed = null;
+        saveProgressSink = null;
+        for (SaveOperation operation : saveOperations.values()) {
+            operation.cancel();
+        }
+        saveOperations.clear();
+        thumbnailLoader.cancelAll();
+        thumbnailLoader = null;
+        workerPool.shutdown();
+        workerPool = null;
+        ioExecutor.shutdown();
+        ioExecutor = null;
+        thumbnailCache.flush();
+        thumbnailCache = null;
+        mainHandler.removeCallbacksAndMessages(null);
+        mainHandler = null;
         context = null;
     }
 
-    // ActivityAware callbacks:
+    /**
+     * Пул для пост-обработки выбранных файлов (пути, превью, размеры).
+     * Число потоков ограничено количеством ядер.
+     */
+    private static ExecutorService createWorkerPool() {
+        int threads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        final ThreadFactory factory = namedThreadFactory("images_picker_worker_");
+        // retriever потока освобождается, когда поток пула завершается
+        return Executors.newFixedThreadPool(threads, r -> factory.newThread(() -> {
+            try {
+                r.run();
+            } finally {
+                MediaInfo.releaseRetriever();
+            }
+        }));
+    }
+
+    /**
+     * Пул для операций FileSaver: не больше maxConcurrent сохранений одновременно,
+     * остальные ждут в очереди. Простаивающие потоки завершаются.
+     */
+    private static ThreadPoolExecutor createIoExecutor(int maxConcurrent) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(maxConcurrent, maxConcurrent,
+                30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(),
+                namedThreadFactory("images_picker_io_"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static ThreadFactory namedThreadFactory(final String prefix) {
+        final AtomicInteger counter = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + counter.incrementAndGet());
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        };
+    }
+
+    private void setMaxConcurrentSaves(int maxConcurrent) {
+        int count = Math.max(1, maxConcurrent);
+        // порядок важен: core не может быть больше max
+        if (count > ioExecutor.getMaximumPoolSize()) {
+            ioExecutor.setMaximumPoolSize(count);
+            ioExecutor.setCorePoolSize(count);
+        } else {
+            ioExecutor.setCorePoolSize(count);
+            ioExecutor.setMaximumPoolSize(count);
+        }
+    }
+
     @Override
     public void onAttachedToActivity(@NonNull ActivityPluginBinding binding) {
         activity = binding.getActivity();
         binding.addRequestPermissionsResultListener(this);
+        binding.addActivityResultListener(this);
     }
 
     @Override
     public void onDetachedFromActivityForConfigChanges() {
+        // ожидающие запросы разрешений не трогаем: открытый системный диалог
+        // переживает поворот экрана и вернёт ответ новой activity с тем же requestCode
         activity = null;
     }
 
     @Override
     public void onReattachedToActivityForConfigChanges(@NonNull ActivityPluginBinding binding) {
         activity = binding.getActivity();
+        // ответ на диалог, открытый до поворота, придёт через новый binding
         binding.addRequestPermissionsResultListener(this);
+        binding.addActivityResultListener(this);
     }
 
     @Override
     public void onDetachedFromActivity() {
         activity = null;
+        failPendingPermissionRequests();
     }
 
     @Override
@@ -129,6 +312,7 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
                 @SuppressWarnings("unchecked")
                 HashMap<String, Object> cropOption = call.argument("cropOption");
                 String language = call.argument("language");
+                PickOptions pickOptions = PickOptions.fromCall(call);
 
                 int chooseType;
                 switch (pickType) {
@@ -150,7 +334,12 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
                 if (cropOption != null) Utils.setCropOpt(model, cropOption);
                 model.isGif(supportGif);
                 model.videoMaxSecond(maxTime);
-                resolveMedias(model, result);
+                // обложки альбомов попадают в кэш Glide, пока открывается окно выбора
+                final boolean images = !"PickType.video".equals(pickType);
+                final boolean videos = !"PickType.image".equals(pickType);
+                final Context appContext = context;
+                workerPool.execute(() -> GlideEngine.preloadFolderCovers(appContext, images, videos));
+                resolveMedias(model, result, pickOptions);
                 break;
             }
 
@@ -161,6 +350,23 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
                 @SuppressWarnings("unchecked")
                 HashMap<String, Object> cropOption = call.argument("cropOption");
                 String language = call.argument("language");
+                PickOptions pickOptions = PickOptions.fromCall(call);
+                final String albumName = call.argument("albumName");
+                if (albumName != null) {
+                    // съёмка идёт в системной камере: обрезать и показать свой интерфейс
+                    // на другом языке нельзя. quality и maxSize применяются при разборе результата.
+                    if (cropOption != null || (language != null && !"Language.System".equals(language))) {
+                        result.error("INVALID_ARGUMENT", "cropOpt and language are not supported with albumName", null);
+                        break;
+                    }
+                    final boolean isVideo = !"PickType.image".equals(pickType);
+                    final int maxSeconds = maxTime;
+                    final PickOptions options = pickOptions;
+                    withStoragePermission(
+                            () -> captureToAlbum(isVideo, albumName, maxSeconds, options, result),
+                            () -> result.success(null));
+                    break;
+                }
 
                 int chooseType = PictureMimeType.ofVideo();
                 if ("PickType.image".equals(pickType)) {
@@ -179,37 +385,177 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
                 Utils.setLanguage(model, language);
                 Utils.setPhotoSelectOpt(model, 1, quality);
                 if (cropOption != null) Utils.setCropOpt(model, cropOption);
-                resolveMedias(model, result);
+                resolveMedias(model, result, pickOptions);
                 break;
             }
 
-            case "saveVideoToAlbum": {
+            case "setThumbnailCacheSize": {
+                Number maxBytes = call.argument("maxBytes");
+                final ThumbnailCache cache = thumbnailCache;
+                final long bytes = maxBytes != null ? maxBytes.longValue() : ThumbnailCache.DEFAULT_MAX_BYTES;
+                workerPool.execute(() -> cache.setMaxBytes(bytes));
+                result.success(true);
+                break;
+            }
+
+            case "queryAlbums": {
+                String pickType = call.argument("pickType");
+                final boolean images = !"PickType.video".equals(pickType);
+                final boolean videos = !"PickType.image".equals(pickType);
+                withStoragePermission(
+                        () -> runQuery(result, () -> MediaQuery.queryAlbums(context, images, videos)),
+                        () -> result.error("PERMISSION_DENIED", "Storage permission denied", null));
+                break;
+            }
+
+            case "queryAssets": {
+                final String albumId = call.argument("albumId");
+                Integer offset = call.argument("offset");
+                Integer limit = call.argument("limit");
+                String pickType = call.argument("pickType");
+                final int from = offset != null ? offset : 0;
+                final int count = limit != null ? limit : 0;
+                final boolean images = !"PickType.video".equals(pickType);
+                final boolean videos = !"PickType.image".equals(pickType);
+                withStoragePermission(
+                        () -> runQuery(result, () -> MediaQuery.queryAssets(context, albumId, from, count, images, videos)),
+                        () -> result.error("PERMISSION_DENIED", "Storage permission denied", null));
+                break;
+            }
+
+            case "getThumbnail": {
                 String path = call.argument("path");
-                String albumName = call.argument("albumName");
-                WRITE_VIDEO_PATH = path;
-                ALBUM_NAME = albumName;
-                if (hasPermission()) {
-                    saveVideoToGallery(path, albumName, result);
-                } else {
-                    pendingResult = result;
-                    String[] permissions = new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE, Manifest.permission.READ_EXTERNAL_STORAGE};
-                    ActivityCompat.requestPermissions(activity, permissions, WRITE_VIDEO_CODE);
-                }
+                Integer requestId = call.argument("requestId");
+                final Handler handler = mainHandler;
+                thumbnailLoader.load(requestId, path, ThumbnailOptions.fromCall(call),
+                        thumbPath -> handler.post(() -> result.success(thumbPath)));
+                break;
+            }
+
+            case "cancelThumbnail": {
+                Integer requestId = call.argument("requestId");
+                result.success(requestId != null && thumbnailLoader.cancel(requestId));
+                break;
+            }
+
+            case "configureGlide":
+                result.success(GlideConfig.apply(context, GlideConfig.fromCall(call)));
+                break;
+
+            case "getMetrics":
+                result.success(Metrics.snapshot());
+                break;
+
+            case "resetMetrics":
+                Metrics.reset();
+                result.success(true);
+                break;
+
+            case "setTraceEnabled": {
+                Boolean enabled = call.argument("enabled");
+                Metrics.setTraceEnabled(enabled != null && enabled);
+                result.success(true);
+                break;
+            }
+
+            case "setMaxConcurrentSaves": {
+                Integer count = call.argument("count");
+                setMaxConcurrentSaves(count != null ? count : DEFAULT_MAX_CONCURRENT_SAVES);
+                result.success(true);
+                break;
+            }
+
+            case "saveVideoToAlbum": {
+                final String path = call.argument("path");
+                final String albumName = call.argument("albumName");
+                final SaveOperation operation = registerSaveOperation(call.argument("operationId"));
+                withStoragePermission(
+                        () -> saveVideoToGallery(path, albumName, operation, result),
+                        () -> {
+                            unregisterSaveOperation(operation);
+                            result.success(false);
+                        });
                 break;
             }
 
             case "saveImageToAlbum": {
-                String path = call.argument("path");
-                String albumName = call.argument("albumName");
-                WRITE_IMAGE_PATH = path;
-                ALBUM_NAME = albumName;
-                if (hasPermission()) {
-                    saveImageToGallery(path, albumName, result);
-                } else {
-                    pendingResult = result;
-                    String[] permissions = new String[]{Manifest.permission.WRITE_EXTERNAL_STORAGE, Manifest.permission.READ_EXTERNAL_STORAGE};
-                    ActivityCompat.requestPermissions(activity, permissions, WRITE_IMAGE_CODE);
+                final String path = call.argument("path");
+                final String albumName = call.argument("albumName");
+                Boolean transcodeArg = call.argument("transcode");
+                Double qualityArg = call.argument("quality");
+                final boolean transcode = transcodeArg != null && transcodeArg;
+                final double quality = qualityArg != null ? qualityArg : 1;
+                final SaveOperation operation = registerSaveOperation(call.argument("operationId"));
+                withStoragePermission(
+                        () -> saveImageToGallery(path, albumName, transcode, quality, operation, result),
+                        () -> {
+                            unregisterSaveOperation(operation);
+                            result.success(false);
+                        });
+                break;
+            }
+
+            case "saveFileToAlbum": {
+                final String path = call.argument("path");
+                final String albumName = call.argument("albumName");
+                Boolean isVideoArg = call.argument("isVideo");
+                Boolean dedupeArg = call.argument("dedupe");
+                final boolean isVideo = isVideoArg != null && isVideoArg;
+                final boolean dedupe = dedupeArg != null && dedupeArg;
+                final Context appContext = context;
+                saveWithResult(call, result, (signal, listener) ->
+                        FileSaver.saveFile(appContext, path, isVideo, albumName, dedupe, signal, listener));
+                break;
+            }
+
+            case "saveBytesToAlbum": {
+                final byte[] bytes = call.argument("bytes");
+                final String mimeType = call.argument("mimeType");
+                final String albumName = call.argument("albumName");
+                Boolean dedupeArg = call.argument("dedupe");
+                final boolean dedupe = dedupeArg != null && dedupeArg;
+                if (bytes == null || mimeType == null) {
+                    result.error("INVALID_ARGUMENT", "bytes and mimeType are required", null);
+                    break;
+                }
+                final Context appContext = context;
+                saveWithResult(call, result, (signal, listener) ->
+                        FileSaver.saveBytes(appContext, bytes, mimeType, albumName, dedupe, signal, listener));
+                break;
+            }
+
+            case "saveUriToAlbum": {
+                final String uri = call.argument("uri");
+                final String mimeType = call.argument("mimeType");
+                final String albumName = call.argument("albumName");
+                Boolean dedupeArg = call.argument("dedupe");
+                final boolean dedupe = dedupeArg != null && dedupeArg;
+                if (uri == null) {
+                    result.error("INVALID_ARGUMENT", "uri is required", null);
+                    break;
                 }
+                final Context appContext = context;
+                saveWithResult(call, result, (signal, listener) ->
+                        FileSaver.saveContentUri(appContext, Uri.parse(uri), mimeType, albumName, dedupe, signal, listener));
+                break;
+            }
+
+            case "cancelSave": {
+                Integer operationId = call.argument("operationId");
+                SaveOperation operation = operationId != null ? saveOperations.get(operationId) : null;
+                if (operation != null) operation.cancel();
+                result.success(operation != null);
+                break;
+            }
+
+            case "saveImagesToAlbum":
+            case "saveVideosToAlbum": {
+                final List<String> paths = call.argument("paths");
+                final String albumName = call.argument("albumName");
+                final boolean isVideo = "saveVideosToAlbum".equals(call.method);
+                withStoragePermission(
+                        () -> saveAllToGallery(isVideo, paths, albumName, result),
+                        () -> result.success(allFailed(paths)));
                 break;
             }
 
@@ -219,81 +565,482 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
         }
     }
 
-    private void resolveMedias(PictureSelectionModel model, Result result) {
+    /**
+     * Если передан streamId, каждый готовый элемент сразу отправляется в
+     * EventChannel (событие "media"), а в конце отправляется событие "done".
+     * Иначе весь список возвращается одним ответом через result.
+     */
+    private void resolveMedias(PictureSelectionModel model, Result result, PickOptions options) {
+        final Integer streamId = options.streamId;
         model.forResult(new OnResultCallbackListener<LocalMedia>() {
             @Override
             public void onResult(final List<LocalMedia> medias) {
-                new Thread(() -> {
-                    final List<Object> resArr = new ArrayList<>();
-                    for (LocalMedia media : medias) {
-                        HashMap<String, Object> map = new HashMap<>();
-                        String path = media.getPath();
-                        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
-                            path = media.getAndroidQToPath();
-                        }
-                        if (media.getMimeType().contains("image")) {
-                            if (media.isCut()) path = media.getCutPath();
-                            if (media.isCompressed()) path = media.getCompressPath();
-                        }
-                        map.put("path", path);
-
-                        String thumbPath;
-                        if (media.getMimeType().contains("image")) {
-                            thumbPath = path;
-                        } else {
-                            thumbPath = createVideoThumb(path);
-                        }
-                        map.put("thumbPath", thumbPath);
-
-                        int size = getFileSize(path);
-                        map.put("size", size);
-
-                        Log.i("ImagesPickerPlugin", map.toString());
-                        resArr.add(map);
+                final long pickStart = Metrics.start();
+                final ExecutorService pool = workerPool;
+                final Handler handler = mainHandler;
+                final ThumbnailCache cache = thumbnailCache;
+                if (pool == null || handler == null) {
+                    result.success(null);
+                    return;
+                }
+                final int total = medias.size();
+                if (total == 0) {
+                    if (streamId != null) {
+                        sendPickEvent(streamId, "done", null, -1, 0);
+                        result.success(true);
+                    } else {
+                        result.success(new ArrayList<>());
                     }
-                    new Handler(context.getMainLooper()).post(() -> result.success(resArr));
-                }).start();
+                    return;
+                }
+                // Каждый элемент обрабатывается параллельно, результат кладётся
+                // по своему индексу, чтобы сохранить порядок выбора.
+                final Object[] resArr = new Object[total];
+                final AtomicInteger remaining = new AtomicInteger(total);
+                try {
+                    for (int i = 0; i < total; i++) {
+                        final int index = i;
+                        final LocalMedia media = medias.get(i);
+                        pool.execute(() -> {
+                            try {
+                                HashMap<String, Object> map = resolveMedia(media, options);
+                                resArr[index] = map;
+                                if (streamId != null) {
+                                    post(handler, () -> sendPickEvent(streamId, "media", map, index, total));
+                                }
+                            } catch (Exception e) {
+                                e.printStackTrace();
+                            }
+                            if (remaining.decrementAndGet() == 0) {
+                                cache.flush();
+                                if (streamId != null) {
+                                    post(handler, () -> {
+                                        sendPickEvent(streamId, "done", null, -1, total);
+                                        result.success(true);
+                                        Metrics.record(Metrics.PICK_TOTAL, pickStart);
+                                    });
+                                    return;
+                                }
+                                final List<Object> list = new ArrayList<>(total);
+                                for (Object item : resArr) {
+                                    if (item != null) list.add(item);
+                                }
+                                post(handler, () -> {
+                                    result.success(list);
+                                    Metrics.record(Metrics.PICK_TOTAL, pickStart);
+                                });
+                            }
+                        });
+                    }
+                } catch (RejectedExecutionException e) {
+                    // плагин отсоединён от движка, ответ уже никому не нужен
+                    e.printStackTrace();
+                }
             }
 
             @Override
             public void onCancel() {
+                if (streamId != null) sendPickEvent(streamId, "cancel", null, -1, 0);
                 result.success(null);
             }
         });
     }
 
-    private String createVideoThumb(String path) {
-        Bitmap bitmap = ThumbnailUtils.createVideoThumbnail(path, MediaStore.Video.Thumbnails.FULL_SCREEN_KIND);
-        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
-        bitmap.compress(Bitmap.CompressFormat.JPEG, 100, bytes);
+    /**
+     * Съёмка системной камерой сразу в альбом: камера пишет в заранее созданную
+     * запись галереи (EXTRA_OUTPUT), после успешной съёмки запись публикуется,
+     * при отмене удаляется. Временного файла и второго копирования нет.
+     */
+    private void captureToAlbum(final boolean isVideo, final String albumName, final int maxTime,
+                                final PickOptions options, final Result result) {
+        if (pendingCapture != null) {
+            result.error("CAMERA_BUSY", "Camera capture is already in progress", null);
+            return;
+        }
+        final PendingCapture capture = new PendingCapture(isVideo, options, result);
+        pendingCapture = capture;
+        final Context appContext = context;
+        final Handler handler = mainHandler;
         try {
-            File outputDir = context.getCacheDir();
-            File outputFile = File.createTempFile("image_picker_thumb_" + UUID.randomUUID(), ".jpg", outputDir);
-            try (FileOutputStream fo = new FileOutputStream(outputFile)) {
-                fo.write(bytes.toByteArray());
-            }
-            return outputFile.getAbsolutePath();
-        } catch (IOException e) {
+            ioExecutor.execute(() -> {
+                final Uri uri = FileSaver.createPendingEntry(appContext, isVideo, albumName);
+                post(handler, () -> launchCapture(capture, uri, maxTime));
+            });
+        } catch (RejectedExecutionException e) {
+            pendingCapture = null;
+            result.success(null);
+        }
+    }
+
+    private void launchCapture(PendingCapture capture, @Nullable Uri uri, int maxTime) {
+        if (uri == null || activity == null) {
+            pendingCapture = null;
+            if (uri != null) discardCapture(uri);
+            capture.result.success(null);
+            return;
+        }
+        capture.uri = uri;
+        Intent intent = new Intent(capture.isVideo ? MediaStore.ACTION_VIDEO_CAPTURE : MediaStore.ACTION_IMAGE_CAPTURE);
+        intent.putExtra(MediaStore.EXTRA_OUTPUT, uri);
+        if (capture.isVideo) intent.putExtra(MediaStore.EXTRA_DURATION_LIMIT, maxTime);
+        intent.addFlags(Intent.FLAG_GRANT_WRITE_URI_PERMISSION | Intent.FLAG_GRANT_READ_URI_PERMISSION);
+        try {
+            activity.startActivityForResult(intent, CAMERA_REQUEST_CODE);
+        } catch (ActivityNotFoundException | SecurityException e) {
+            // нет приложения камеры или у приложения не выдано разрешение CAMERA
+            pendingCapture = null;
+            discardCapture(uri);
+            capture.result.error("CAMERA_UNAVAILABLE", e.getMessage(), null);
+        }
+    }
+
+    private void discardCapture(final Uri uri) {
+        final Context appContext = context;
+        try {
+            ioExecutor.execute(() -> FileSaver.discardPendingEntry(appContext, uri));
+        } catch (RejectedExecutionException e) {
+            // запись останется в журнале и будет удалена при следующем запуске
+        }
+    }
+
+    @Override
+    public boolean onActivityResult(int requestCode, int resultCode, @Nullable Intent data) {
+        if (requestCode != CAMERA_REQUEST_CODE || pendingCapture == null || pendingCapture.uri == null) {
+            return false;
+        }
+        final PendingCapture capture = pendingCapture;
+        pendingCapture = null;
+        if (resultCode != Activity.RESULT_OK) {
+            discardCapture(capture.uri);
+            capture.result.success(null);
+            return true;
+        }
+        final Context appContext = context;
+        final Handler handler = mainHandler;
+        final ExecutorService pool = workerPool;
+        try {
+            // публикация — на ioExecutor, разбор файла — в workerPool, как у pick
+            ioExecutor.execute(() -> {
+                String published = FileSaver.publishPendingEntry(appContext, capture.uri);
+                String type = published != null ? appContext.getContentResolver().getType(capture.uri) : null;
+                final String mimeType = type != null ? type : (capture.isVideo ? "video/mp4" : "image/jpeg");
+                final String path = published != null
+                        ? FileSaver.readablePath(appContext, capture.uri, published, mimeType)
+                        : null;
+                if (path == null) {
+                    post(handler, () -> capture.result.success(null));
+                    return;
+                }
+                try {
+                    pool.execute(() -> resolveCapture(path, mimeType, capture, handler));
+                } catch (RejectedExecutionException e) {
+                    post(handler, () -> capture.result.success(null));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            capture.result.success(null);
+        }
+        return true;
+    }
+
+    private void resolveCapture(String path, String mimeType, PendingCapture capture, Handler handler) {
+        LocalMedia media = new LocalMedia();
+        media.setPath(path);
+        media.setAndroidQToPath(path);
+        media.setMimeType(mimeType);
+        final List<Object> list = new ArrayList<>(1);
+        try {
+            list.add(resolveMedia(media, capture.options));
+        } catch (Exception e) {
             e.printStackTrace();
         }
-        return null;
+        ThumbnailCache cache = thumbnailCache;
+        if (cache != null) cache.flush();
+        post(handler, () -> capture.result.success(list));
+    }
+
+    /**
+     * Отправляет событие потокового выбора. Вызывать только на главном потоке.
+     */
+    private void sendPickEvent(int streamId, String type, @Nullable HashMap<String, Object> media, int index, int total) {
+        if (pickEventSink == null) return;
+        HashMap<String, Object> event = new HashMap<>();
+        event.put("streamId", streamId);
+        event.put("type", type);
+        event.put("total", total);
+        if (media != null) {
+            event.put("index", index);
+            event.put("media", media);
+        }
+        pickEventSink.success(event);
+    }
+
+    /**
+     * Выполняет ответ на главном потоке и записывает задержку от post до его выполнения.
+     */
+    private static void post(Handler handler, final Runnable reply) {
+        final long start = Metrics.start();
+        handler.post(() -> {
+            reply.run();
+            Metrics.record(Metrics.CHANNEL_POST, start);
+        });
+    }
+
+    private HashMap<String, Object> resolveMedia(LocalMedia media, PickOptions options) {
+        long resolveStart = Metrics.start();
+        HashMap<String, Object> map = new HashMap<>();
+        String path = media.getPath();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            path = media.getAndroidQToPath();
+        }
+        // размеры из LocalMedia верны, пока файл не обрезан и не пересжат
+        int imageWidth = media.getWidth();
+        int imageHeight = media.getHeight();
+        String mimeType = media.getMimeType();
+        if (media.getMimeType().contains("image")) {
+            if (media.isCut() || media.isCompressed()) {
+                imageWidth = 0;
+                imageHeight = 0;
+            }
+            if (media.isCut()) path = media.getCutPath();
+            if (media.isCompressed()) path = media.getCompressPath();
+        }
+        Metrics.record(Metrics.PATH_RESOLVE, resolveStart);
+        if (media.getMimeType().contains("image")) {
+            // gif не сжимаем, иначе потеряется анимация
+            if (options.maxSize > 0 && !media.getMimeType().contains("gif")) {
+                long compressStart = Metrics.start();
+                ImageCompressor.Result compressed = ImageCompressor.compress(context, path, options.maxSize, options.maxQuality);
+                Metrics.record(Metrics.COMPRESS, compressStart);
+                if (compressed != null) {
+                    path = compressed.path;
+                    imageWidth = compressed.width;
+                    imageHeight = compressed.height;
+                    mimeType = compressed.mimeType;
+                    map.put("quality", compressed.quality / 100.0);
+                }
+            }
+        }
+        map.put("path", path);
+        map.put("mimeType", mimeType);
+
+        String thumbPath;
+        if (media.getMimeType().contains("image")) {
+            thumbPath = path;
+            MediaInfo.putImageInfo(map, path, imageWidth, imageHeight);
+        } else {
+            // один retriever на поток: метаданные и кадр превью за одно открытие файла
+            MediaMetadataRetriever retriever = MediaInfo.openVideo(path);
+            MediaInfo.putVideoInfo(map, retriever, media.getWidth(), media.getHeight(), media.getDuration());
+            // в ленивом режиме превью видео запрашивается позже через getThumbnail
+            thumbPath = options.lazyThumbnails
+                    ? null
+                    : Thumbnails.createVideoThumb(thumbnailCache, path, options.thumbOptions, retriever);
+        }
+        map.put("thumbPath", thumbPath);
+        if (options.thumbData && !options.lazyThumbnails) {
+            // byte[] уходит через StandardMessageCodec как Uint8List без временного файла
+            byte[] thumbData = null;
+            if (media.getMimeType().contains("image")) {
+                thumbData = Thumbnails.createImageThumbData(path, options.thumbOptions, options.thumbDataMaxBytes);
+            } else if (thumbPath != null) {
+                thumbData = Thumbnails.readThumbData(thumbPath, options.thumbOptions, options.thumbDataMaxBytes);
+            }
+            map.put("thumbData", thumbData);
+        }
+
+        long sizeStart = Metrics.start();
+        long size = getFileSize(path);
+        Metrics.record(Metrics.SIZE_STAT, sizeStart);
+        map.put("size", size);
+
+        if (Metrics.isTraceEnabled()) Metrics.trace("resolved " + map);
+        return map;
     }
 
-    private int getFileSize(String path) {
+    private long getFileSize(String path) {
         File file = new File(path);
-        return (int) file.length();
+        return file.length();
     }
 
-    private void saveImageToGallery(final String path, String albumName, Result result) {
-        boolean status = false;
-        String suffix = path.substring(path.lastIndexOf('.') + 1);
-        Bitmap bitmap = BitmapFactory.decodeFile(path);
-        status = FileSaver.saveImage(context, bitmap, suffix, albumName);
-        result.success(status);
+    /**
+     * По умолчанию исходные байты копируются без декодирования (EXIF сохраняется).
+     * Перекодирование выполняется только если его явно запросили.
+     */
+    private void saveImageToGallery(final String path, final String albumName, final boolean transcode, final double quality,
+                                    @Nullable final SaveOperation operation, final Result result) {
+        final Context context = this.context;
+        runSave(result, false, () -> {
+            try {
+                if (operation != null) {
+                    if (operation.isCanceled()) return false;
+                    operation.start();
+                }
+                if (transcode) {
+                    String suffix = FileSaver.suffixOf(path);
+                    Bitmap bitmap = BitmapFactory.decodeFile(path);
+                    return bitmap != null
+                            && FileSaver.saveImage(context, bitmap, suffix, albumName, (int) (quality * 100));
+                }
+                return FileSaver.saveImage(context, path, albumName,
+                        operation != null ? operation.signal : null, operation);
+            } finally {
+                unregisterSaveOperation(operation);
+            }
+        });
+    }
+
+    private void saveVideoToGallery(final String path, final String albumName, @Nullable final SaveOperation operation, final Result result) {
+        final Context context = this.context;
+        runSave(result, false, () -> {
+            try {
+                if (operation != null) {
+                    if (operation.isCanceled()) return false;
+                    operation.start();
+                }
+                return FileSaver.saveVideo(context, path, albumName,
+                        operation != null ? operation.signal : null, operation);
+            } finally {
+                unregisterSaveOperation(operation);
+            }
+        });
+    }
+
+    /**
+     * Сохранение, которое отвечает картой SaveResult (saveFile, saveBytes, saveContentUri).
+     */
+    private interface ResultSave {
+        FileSaver.SaveResult save(@Nullable CancellationSignal signal, @Nullable FileSaver.ProgressListener listener);
+    }
+
+    /**
+     * Проверяет разрешение и выполняет save в ioExecutor; operationId из call
+     * (если есть) позволяет отменить сохранение и получать прогресс.
+     */
+    private void saveWithResult(MethodCall call, final Result result, final ResultSave save) {
+        final SaveOperation operation = registerSaveOperation(call.argument("operationId"));
+        final HashMap<String, Object> failure = FileSaver.SaveResult.failed(0).toMap();
+        withStoragePermission(
+                () -> runSave(result, failure, () -> {
+                    try {
+                        if (operation != null) {
+                            if (operation.isCanceled()) return failure;
+                            operation.start();
+                        }
+                        return save.save(operation != null ? operation.signal : null, operation).toMap();
+                    } finally {
+                        unregisterSaveOperation(operation);
+                    }
+                }),
+                () -> {
+                    unregisterSaveOperation(operation);
+                    result.success(failure);
+                });
+    }
+
+    /**
+     * Регистрирует операцию, если Dart передал operationId: её можно отменить
+     * через cancelSave, а прогресс отправляется в save_progress.
+     */
+    @Nullable
+    private SaveOperation registerSaveOperation(@Nullable Integer operationId) {
+        if (operationId == null) return null;
+        SaveOperation operation = new SaveOperation(operationId, this::sendSaveProgress);
+        saveOperations.put(operationId, operation);
+        return operation;
+    }
+
+    private void unregisterSaveOperation(@Nullable SaveOperation operation) {
+        if (operation != null) saveOperations.remove(operation.id, operation);
+    }
+
+    private void sendSaveProgress(SaveOperation operation, long bytesWritten, long totalBytes, long bytesPerSecond) {
+        final Handler handler = mainHandler;
+        if (handler == null) return;
+        final HashMap<String, Object> event = new HashMap<>();
+        event.put("operationId", operation.id);
+        event.put("bytesWritten", bytesWritten);
+        event.put("totalBytes", totalBytes);
+        event.put("bytesPerSecond", bytesPerSecond);
+        handler.post(() -> {
+            if (saveProgressSink != null) saveProgressSink.success(event);
+        });
+    }
+
+    /**
+     * Пакет целиком идёт через ioExecutor: и вставка строк, и запись каждого файла,
+     * поэтому действует общий лимит параллельных сохранений.
+     */
+    private void saveAllToGallery(final boolean isVideo, final List<String> paths, final String albumName, final Result result) {
+        final Context context = this.context;
+        final Handler handler = mainHandler;
+        final ThreadPoolExecutor executor = ioExecutor;
+        final FileSaver.BatchCallback callback = res -> post(handler, () -> result.success(res));
+        try {
+            executor.execute(() -> {
+                try {
+                    if (isVideo) {
+                        FileSaver.saveVideos(context, paths, albumName, executor, callback);
+                    } else {
+                        FileSaver.saveImages(context, paths, albumName, executor, callback);
+                    }
+                } catch (RuntimeException e) {
+                    e.printStackTrace();
+                    post(handler, () -> result.success(allFailed(paths)));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.success(allFailed(paths));
+        }
+    }
+
+    /**
+     * Выполняет сохранение в ioExecutor и возвращает ответ на главном потоке.
+     * При исключении отправляется failure.
+     */
+    private void runSave(final Result result, final Object failure, final Callable<Object> task) {
+        final Handler handler = mainHandler;
+        try {
+            ioExecutor.execute(() -> {
+                Object res;
+                try {
+                    res = task.call();
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    res = failure;
+                }
+                final Object reply = res;
+                post(handler, () -> result.success(reply));
+            });
+        } catch (RejectedExecutionException e) {
+            result.success(failure);
+        }
     }
 
-    private void saveVideoToGallery(String path, String albumName, Result result) {
-        result.success(FileSaver.saveVideo(context, path, albumName));
+    /**
+     * Выполняет запрос к MediaStore в пуле и отвечает на главном потоке.
+     */
+    private void runQuery(final Result result, final Callable<Object> query) {
+        final Handler handler = mainHandler;
+        try {
+            workerPool.execute(() -> {
+                try {
+                    final Object reply = query.call();
+                    post(handler, () -> result.success(reply));
+                } catch (Exception e) {
+                    e.printStackTrace();
+                    post(handler, () -> result.error("QUERY_FAILED", e.getMessage(), null));
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            result.error("QUERY_FAILED", "Plugin is detached", null);
+        }
+    }
+
+    private static List<Boolean> allFailed(List<String> paths) {
+        List<Boolean> res = new ArrayList<>(paths.size());
+        for (int i = 0; i < paths.size(); i++) res.add(false);
+        return res;
     }
 
     private boolean hasPermission() {
@@ -302,33 +1049,63 @@ public class ImagesPickerPlugin implements FlutterPlugin, ActivityAware, MethodC
                         && ContextCompat.checkSelfPermission(context, Manifest.permission.READ_EXTERNAL_STORAGE) == PackageManager.PERMISSION_GRANTED);
     }
 
+    /**
+     * Выполняет onGranted сразу, если разрешение уже есть. Иначе запрос
+     * регистрируется под своим кодом; системный диалог показывается один раз
+     * для всех ожидающих запросов.
+     */
+    private void withStoragePermission(Runnable onGranted, Runnable onDenied) {
+        if (hasPermission()) {
+            onGranted.run();
+            return;
+        }
+        if (activity == null) {
+            onDenied.run();
+            return;
+        }
+        int requestCode;
+        do {
+            requestCode = PERMISSION_REQUEST_BASE + (nextRequestCode++ & 0xFF);
+        } while (pendingRequests.containsKey(requestCode));
+        pendingRequests.put(requestCode, new PendingRequest(onGranted, onDenied));
+        if (!permissionRequestInFlight) {
+            permissionRequestInFlight = true;
+            ActivityCompat.requestPermissions(activity, STORAGE_PERMISSIONS, requestCode);
+        }
+    }
+
+    /**
+     * Activity или engine ушли насовсем, ответ на системный диалог уже не придёт:
+     * ожидающие запросы завершаются отказом, чтобы Dart не ждал вечно, а следующий
+     * запрос снова покажет диалог. При смене конфигурации не вызывается.
+     */
+    private void failPendingPermissionRequests() {
+        permissionRequestInFlight = false;
+        if (pendingRequests.isEmpty()) return;
+        List<PendingRequest> drained = new ArrayList<>(pendingRequests.values());
+        pendingRequests.clear();
+        for (PendingRequest request : drained) {
+            request.onDenied.run();
+        }
+    }
+
     @Override
     public boolean onRequestPermissionsResult(int requestCode, @NonNull String[] permissions, @NonNull int[] grantResults) {
-        if (pendingResult == null) {
+        if (!pendingRequests.containsKey(requestCode)) {
             return false;
         }
-        if (requestCode == WRITE_IMAGE_CODE) {
-            if (grantResults.length > 1
-                    && grantResults[0] == PackageManager.PERMISSION_GRANTED
-                    && grantResults[1] == PackageManager.PERMISSION_GRANTED) {
-                saveImageToGallery(WRITE_IMAGE_PATH, ALBUM_NAME, pendingResult);
-            } else {
-                pendingResult.success(false);
-            }
-            pendingResult = null;
-            return true;
-        }
-        if (requestCode == WRITE_VIDEO_CODE) {
-            if (grantResults.length > 1
-                    && grantResults[0] == PackageManager.PERMISSION_GRANTED
-                    && grantResults[1] == PackageManager.PERMISSION_GRANTED) {
-                saveVideoToGallery(WRITE_VIDEO_PATH, ALBUM_NAME, pendingResult);
+        permissionRequestInFlight = false;
+        boolean granted = hasPermission();
+        // результат относится ко всем ожидающим запросам, а не только к requestCode
+        List<PendingRequest> drained = new ArrayList<>(pendingRequests.values());
+        pendingRequests.clear();
+        for (PendingRequest request : drained) {
+            if (granted) {
+                request.onGranted.run();
             } else {
-                pendingResult.success(false);
+                request.onDenied.run();
             }
-            pendingResult = null;
-            return true;
         }
-        return false;
+        return true;
     }
 }
@@ -0,0 +1,357 @@
+package com.chavesgu.images_picker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import io.flutter.plugin.common.EventChannel;
+
+/**
+ * Поток изменений медиатеки для Dart: добавленные, изменённые и удалённые id.
+ * <p>
+ * ContentObserver на Images и Video; уведомления копятся и обрабатываются
+ * одной пачкой через DEBOUNCE_MS после последнего. Вся работа — на отдельном потоке.
+ * На всех версиях хранится отсортированный массив известных id: добавленной
+ * считается строка, которой в нём нет (в том числе опубликованная строка IS_PENDING,
+ * созданная давно, и восстановленная из корзины).
+ * API >= 30: по каждому внешнему тому строки с GENERATION_MODIFIED больше
+ * запомненного поколения этого тома (включая строки в корзине — они считаются
+ * удалёнными), удаления — также из uri с флагом NOTIFY_DELETE. Если набор томов
+ * или версия какого-то тома изменились, отправляется reset.
+ * API < 30: строки с DATE_MODIFIED больше запомненного, удаления — сравнением
+ * отсортированных множеств id, которое выполняется только если число строк не сошлось.
+ */
+public class MediaChangeFeed implements EventChannel.StreamHandler {
+    private static final long DEBOUNCE_MS = 300;
+
+    private final Context context;
+    private final Handler mainHandler;
+    private HandlerThread thread;
+    private Handler handler;
+    private ContentObserver observer;
+    private EventChannel.EventSink sink;
+
+    // состояние ниже доступно только с потока handler
+    private HashMap<String, String> volumeVersions = new HashMap<>();
+    private final HashMap<String, Long> generations = new HashMap<>();
+    private long dateModifiedWatermark;
+    private long[] knownIds = new long[0];
+    private final HashSet<Long> pendingDeletes = new HashSet<>();
+    private final Runnable flush = this::flush;
+
+    public MediaChangeFeed(@NonNull Context context, @NonNull Handler mainHandler) {
+        this.context = context;
+        this.mainHandler = mainHandler;
+    }
+
+    @Override
+    public void onListen(Object arguments, EventChannel.EventSink events) {
+        if (thread != null) stop();
+        sink = events;
+        thread = new HandlerThread("images_picker-media-changes", Process.THREAD_PRIORITY_BACKGROUND);
+        thread.start();
+        handler = new Handler(thread.getLooper());
+        observer = new ContentObserver(handler) {
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri) {
+                onMediaChange(uri, 0);
+            }
+
+            @Override
+            public void onChange(boolean selfChange, @Nullable Uri uri, int flags) {
+                onMediaChange(uri, flags);
+            }
+        };
+        handler.post(this::init);
+        ContentResolver resolver = context.getContentResolver();
+        resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, observer);
+        resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, observer);
+    }
+
+    @Override
+    public void onCancel(Object arguments) {
+        stop();
+    }
+
+    public void stop() {
+        if (observer != null) {
+            context.getContentResolver().unregisterContentObserver(observer);
+            observer = null;
+        }
+        if (thread != null) {
+            thread.quitSafely();
+            thread = null;
+            handler = null;
+        }
+        sink = null;
+    }
+
+    private void onMediaChange(@Nullable Uri uri, int flags) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+                && (flags & ContentResolver.NOTIFY_DELETE) != 0 && uri != null) {
+            try {
+                long id = ContentUris.parseId(uri);
+                if (id >= 0) pendingDeletes.add(id);
+            } catch (NumberFormatException | UnsupportedOperationException e) {
+                // уведомление о коллекции целиком, без id
+            }
+        }
+        Handler current = handler;
+        if (current == null) return;
+        current.removeCallbacks(flush);
+        current.postDelayed(flush, DEBOUNCE_MS);
+    }
+
+    private void init() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                resetGenerations(currentVolumeVersions());
+            } else {
+                dateModifiedWatermark = maxDateModified();
+            }
+            knownIds = scanIds();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void flush() {
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                flushByGeneration();
+            } else {
+                flushByDateModified();
+            }
+        } catch (RuntimeException e) {
+            // например, нет разрешения на чтение: ждём следующего изменения
+            e.printStackTrace();
+        }
+    }
+
+    private void flushByGeneration() {
+        HashMap<String, String> versions = currentVolumeVersions();
+        if (!versions.equals(volumeVersions)) {
+            // том подключён/отключён или база пересоздана: поколения несравнимы,
+            // Dart должен перечитать всё
+            resetGenerations(versions);
+            knownIds = scanIds();
+            pendingDeletes.clear();
+            send(null, null, null, true);
+            return;
+        }
+        List<Long> inserted = new ArrayList<>();
+        List<Long> updated = new ArrayList<>();
+        HashSet<Long> removed = new HashSet<>(pendingDeletes);
+        pendingDeletes.clear();
+        ContentResolver resolver = context.getContentResolver();
+        for (String volume : versions.keySet()) {
+            // поколение читается до выборки, чтобы не пропустить изменения между ними
+            long nextGeneration = MediaStore.getGeneration(context, volume);
+            Long generation = generations.get(volume);
+            long since = generation != null ? generation : 0;
+            if (nextGeneration == since) continue;
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION,
+                    "(" + MediaQuery.mediaTypeSelection(true, true) + ") AND "
+                            + MediaStore.MediaColumns.GENERATION_MODIFIED + ">?");
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS,
+                    new String[]{String.valueOf(since)});
+            queryArgs.putInt(MediaStore.QUERY_ARG_MATCH_TRASHED, MediaStore.MATCH_INCLUDE);
+            Cursor cursor = resolver.query(MediaStore.Files.getContentUri(volume),
+                    new String[]{MediaStore.Files.FileColumns._ID, MediaStore.MediaColumns.IS_TRASHED},
+                    queryArgs, null);
+            if (cursor != null) {
+                try {
+                    while (cursor.moveToNext()) {
+                        long id = cursor.getLong(0);
+                        if (cursor.getInt(1) != 0) {
+                            removed.add(id);
+                        } else {
+                            (Arrays.binarySearch(knownIds, id) < 0 ? inserted : updated).add(id);
+                        }
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            generations.put(volume, nextGeneration);
+        }
+        // о строках, которых Dart не видел (например, удалённых до публикации), не сообщаем
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : removed) {
+            if (Arrays.binarySearch(knownIds, id) >= 0) deleted.add(id);
+        }
+        knownIds = removeIds(mergeIds(knownIds, inserted), deleted);
+        send(inserted, updated, deleted, false);
+    }
+
+    private HashMap<String, String> currentVolumeVersions() {
+        HashMap<String, String> versions = new HashMap<>();
+        for (String volume : MediaStore.getExternalVolumeNames(context)) {
+            versions.put(volume, MediaStore.getVersion(context, volume));
+        }
+        return versions;
+    }
+
+    private void resetGenerations(@NonNull HashMap<String, String> versions) {
+        volumeVersions = versions;
+        generations.clear();
+        for (String volume : versions.keySet()) {
+            generations.put(volume, MediaStore.getGeneration(context, volume));
+        }
+    }
+
+    private void flushByDateModified() {
+        List<Long> inserted = new ArrayList<>();
+        List<Long> updated = new ArrayList<>();
+        long watermark = dateModifiedWatermark;
+        Cursor cursor = context.getContentResolver().query(MediaStore.Files.getContentUri("external"),
+                new String[]{MediaStore.Files.FileColumns._ID, MediaStore.Files.FileColumns.DATE_MODIFIED},
+                "(" + MediaQuery.mediaTypeSelection(true, true) + ") AND "
+                        + MediaStore.Files.FileColumns.DATE_MODIFIED + ">?",
+                new String[]{String.valueOf(watermark)}, null);
+        if (cursor != null) {
+            try {
+                while (cursor.moveToNext()) {
+                    long id = cursor.getLong(0);
+                    (Arrays.binarySearch(knownIds, id) < 0 ? inserted : updated).add(id);
+                    dateModifiedWatermark = Math.max(dateModifiedWatermark, cursor.getLong(1));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+
+        List<Long> deleted = new ArrayList<>();
+        long[] merged = mergeIds(knownIds, inserted);
+        if (countRows() != merged.length) {
+            // число строк не сошлось: были удаления (или добавления со старой датой)
+            long[] current = scanIds();
+            diffIds(merged, current, deleted, inserted);
+            merged = current;
+        }
+        knownIds = merged;
+        send(inserted, updated, deleted, false);
+    }
+
+    private void send(@Nullable List<Long> inserted, @Nullable List<Long> updated,
+                      @Nullable List<Long> deleted, boolean reset) {
+        if (!reset && inserted.isEmpty() && updated.isEmpty() && deleted.isEmpty()) return;
+        final HashMap<String, Object> event = new HashMap<>();
+        event.put("inserted", inserted != null ? inserted : new ArrayList<Long>());
+        event.put("updated", updated != null ? updated : new ArrayList<Long>());
+        event.put("deleted", deleted != null ? deleted : new ArrayList<Long>());
+        event.put("reset", reset);
+        mainHandler.post(() -> {
+            if (sink != null) sink.success(event);
+        });
+    }
+
+    private long[] scanIds() {
+        Cursor cursor = context.getContentResolver().query(MediaStore.Files.getContentUri("external"),
+                new String[]{MediaStore.Files.FileColumns._ID},
+                MediaQuery.mediaTypeSelection(true, true), null,
+                MediaStore.Files.FileColumns._ID + " ASC");
+        if (cursor == null) return new long[0];
+        try {
+            long[] ids = new long[cursor.getCount()];
+            int i = 0;
+            while (cursor.moveToNext() && i < ids.length) {
+                ids[i++] = cursor.getLong(0);
+            }
+            return i == ids.length ? ids : Arrays.copyOf(ids, i);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private int countRows() {
+        Cursor cursor = context.getContentResolver().query(MediaStore.Files.getContentUri("external"),
+                new String[]{MediaStore.Files.FileColumns._ID},
+                MediaQuery.mediaTypeSelection(true, true), null, null);
+        if (cursor == null) return 0;
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long maxDateModified() {
+        Cursor cursor = context.getContentResolver().query(MediaStore.Files.getContentUri("external"),
+                new String[]{MediaStore.Files.FileColumns.DATE_MODIFIED},
+                MediaQuery.mediaTypeSelection(true, true), null,
+                MediaStore.Files.FileColumns.DATE_MODIFIED + " DESC LIMIT 1");
+        if (cursor == null) return 0;
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    static long[] mergeIds(@NonNull long[] known, @NonNull List<Long> inserted) {
+        if (inserted.isEmpty()) return known;
+        long[] merged = Arrays.copyOf(known, known.length + inserted.size());
+        int i = known.length;
+        for (Long id : inserted) {
+            merged[i++] = id;
+        }
+        Arrays.sort(merged);
+        return merged;
+    }
+
+    /**
+     * Отсортированный массив known без id из removed.
+     */
+    static long[] removeIds(@NonNull long[] known, @NonNull List<Long> removed) {
+        if (removed.isEmpty()) return known;
+        HashSet<Long> set = new HashSet<>(removed);
+        long[] result = new long[known.length];
+        int n = 0;
+        for (long id : known) {
+            if (!set.contains(id)) result[n++] = id;
+        }
+        return n == result.length ? result : Arrays.copyOf(result, n);
+    }
+
+    /**
+     * Сравнивает два отсортированных множества id: чего нет в current — удалено,
+     * чего не было в previous — добавлено (если ещё не попало в inserted).
+     */
+    static void diffIds(@NonNull long[] previous, @NonNull long[] current,
+                        @NonNull List<Long> deleted, @NonNull List<Long> inserted) {
+        HashSet<Long> alreadyInserted = new HashSet<>(inserted);
+        int i = 0;
+        int j = 0;
+        while (i < previous.length || j < current.length) {
+            if (j >= current.length || (i < previous.length && previous[i] < current[j])) {
+                deleted.add(previous[i++]);
+            } else if (i >= previous.length || current[j] < previous[i]) {
+                if (!alreadyInserted.contains(current[j])) inserted.add(current[j]);
+                j++;
+            } else {
+                i++;
+                j++;
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.chavesgu.images_picker;
+
+import android.graphics.BitmapFactory;
+import android.media.ExifInterface;
+import android.media.MediaMetadataRetriever;
+import android.os.Build;
+import android.system.ErrnoException;
+import android.system.Os;
+import android.system.OsConstants;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.FileDescriptor;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Сбор метаданных файла (размеры, длительность, поворот) за один проход.
+ * <p>
+ * Для видео используется один MediaMetadataRetriever на поток: он же потом
+ * отдаёт кадр для превью, поэтому файл открывается только один раз.
+ */
+public class MediaInfo {
+    private static final ThreadLocal<MediaMetadataRetriever> RETRIEVER = new ThreadLocal<>();
+
+    /**
+     * Открывает видео в retriever текущего потока.
+     * Возвращает null, если файл не удалось открыть.
+     */
+    @Nullable
+    public static MediaMetadataRetriever openVideo(@NonNull String path) {
+        MediaMetadataRetriever retriever = RETRIEVER.get();
+        if (retriever == null) {
+            retriever = new MediaMetadataRetriever();
+            RETRIEVER.set(retriever);
+        }
+        try {
+            retriever.setDataSource(path);
+            return retriever;
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Освобождает retriever текущего потока; вызывается при завершении потока пула.
+     */
+    public static void releaseRetriever() {
+        MediaMetadataRetriever retriever = RETRIEVER.get();
+        if (retriever == null) return;
+        RETRIEVER.remove();
+        try {
+            retriever.release();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Дописывает в map width, height, duration и orientation видео.
+     * Значения из LocalMedia (если > 0) имеют приоритет.
+     */
+    public static void putVideoInfo(@NonNull HashMap<String, Object> map, @Nullable MediaMetadataRetriever retriever,
+                                    int width, int height, long duration) {
+        int orientation = 0;
+        if (retriever != null) {
+            if (width <= 0) width = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_WIDTH));
+            if (height <= 0) height = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_HEIGHT));
+            if (duration <= 0) duration = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_DURATION));
+            orientation = parseInt(retriever.extractMetadata(MediaMetadataRetriever.METADATA_KEY_VIDEO_ROTATION));
+        }
+        map.put("width", width);
+        map.put("height", height);
+        map.put("duration", duration);
+        map.put("orientation", orientation);
+    }
+
+    /**
+     * Дописывает в map width, height и orientation картинки. Если размеры
+     * неизвестны (например, после обрезки), читается только заголовок файла.
+     * <p>
+     * На API 24+ файл открывается один раз: заголовок и EXIF читаются из одного
+     * дескриптора. Ниже ExifInterface принимает только путь, поэтому открытий два.
+     */
+    public static void putImageInfo(@NonNull HashMap<String, Object> map, @NonNull String path, int width, int height) {
+        boolean needBounds = width <= 0 || height <= 0;
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        int orientation = 0;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            try (FileInputStream in = new FileInputStream(path)) {
+                FileDescriptor fd = in.getFD();
+                if (needBounds) {
+                    BitmapFactory.decodeFileDescriptor(fd, null, options);
+                    Os.lseek(fd, 0, OsConstants.SEEK_SET);
+                }
+                orientation = exifDegrees(new ExifInterface(fd));
+            } catch (IOException | ErrnoException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        } else {
+            if (needBounds) BitmapFactory.decodeFile(path, options);
+            orientation = imageOrientation(path);
+        }
+        if (needBounds) {
+            width = options.outWidth;
+            height = options.outHeight;
+        }
+        map.put("width", width);
+        map.put("height", height);
+        map.put("duration", 0L);
+        map.put("orientation", orientation);
+    }
+
+    static int imageOrientation(@NonNull String path) {
+        try {
+            return exifDegrees(new ExifInterface(path));
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static int exifDegrees(@NonNull ExifInterface exif) {
+        int orientation = exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                return 90;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                return 180;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                return 270;
+            default:
+                return 0;
+        }
+    }
+
+    private static int parseInt(@Nullable String value) {
+        if (value == null) return 0;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
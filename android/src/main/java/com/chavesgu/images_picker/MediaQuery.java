@@ -0,0 +1,312 @@
+package com.chavesgu.images_picker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.MediaStore;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Запросы к MediaStore без окна выбора: список альбомов и постраничный список файлов.
+ * <p>
+ * Запрашиваются только нужные колонки. Страница ограничивается в самом запросе:
+ * API >= 30 через QUERY_ARG_LIMIT/OFFSET, ниже — через LIMIT в sortOrder
+ * (на API 30+ такой sortOrder запрещён). Если провайдер не подтвердил limit/offset
+ * (EXTRA_HONORED_ARGS) или отверг LIMIT в sortOrder, курсор читается с позиции offset.
+ * <p>
+ * Список альбомов требует прохода по всей медиатеке, поэтому он кэшируется
+ * до первого изменения Images/Video (ContentObserver).
+ */
+public class MediaQuery {
+    private static final Uri FILES_URI = MediaStore.Files.getContentUri("external");
+    private static final String BUCKET_ID = MediaStore.Images.ImageColumns.BUCKET_ID;
+    private static final String BUCKET_DISPLAY_NAME = MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME;
+    // колонки есть в таблице files для всех типов, на API < 29 без констант в MediaColumns
+    private static final String DURATION = MediaStore.Video.VideoColumns.DURATION;
+    private static final String ORIENTATION = MediaStore.Images.ImageColumns.ORIENTATION;
+
+    private static final Object albumCacheLock = new Object();
+    // ключ — images|videos; сбрасывается при любом изменении медиатеки
+    private static final HashMap<String, List<HashMap<String, Object>>> albumCache = new HashMap<>();
+    private static int albumCacheVersion;
+    private static ContentObserver albumCacheObserver;
+
+    private static final String[] ASSET_PROJECTION = new String[]{
+            MediaStore.Files.FileColumns._ID,
+            MediaStore.Files.FileColumns.MEDIA_TYPE,
+            MediaStore.Files.FileColumns.MIME_TYPE,
+            MediaStore.Files.FileColumns.DATA,
+            MediaStore.Files.FileColumns.WIDTH,
+            MediaStore.Files.FileColumns.HEIGHT,
+            DURATION,
+            ORIENTATION,
+            MediaStore.Files.FileColumns.SIZE,
+            MediaStore.Files.FileColumns.DATE_MODIFIED,
+            BUCKET_ID,
+    };
+
+    /**
+     * Альбомы (bucket) с количеством файлов и обложкой — самым новым файлом.
+     * Порядок: по дате самого нового файла. Результат кэшируется до изменения медиатеки.
+     */
+    @NonNull
+    public static List<HashMap<String, Object>> queryAlbums(@NonNull Context context, boolean images, boolean videos) {
+        if (mediaTypeSelection(images, videos) == null) return new ArrayList<>();
+        String key = images + "|" + videos;
+        int version;
+        synchronized (albumCacheLock) {
+            ensureAlbumCacheObserver(context);
+            List<HashMap<String, Object>> cached = albumCache.get(key);
+            if (cached != null) return new ArrayList<>(cached);
+            version = albumCacheVersion;
+        }
+        List<HashMap<String, Object>> albums = scanAlbums(context, images, videos);
+        synchronized (albumCacheLock) {
+            // медиатека изменилась во время прохода — результат мог устареть
+            if (version == albumCacheVersion) albumCache.put(key, albums);
+        }
+        return new ArrayList<>(albums);
+    }
+
+    /**
+     * Альбомы из кэша {@link #queryAlbums} без обращения к MediaStore; null, если кэш пуст.
+     */
+    @Nullable
+    private static List<HashMap<String, Object>> cachedAlbums(boolean images, boolean videos) {
+        synchronized (albumCacheLock) {
+            List<HashMap<String, Object>> cached = albumCache.get(images + "|" + videos);
+            return cached != null ? new ArrayList<>(cached) : null;
+        }
+    }
+
+    /**
+     * Обложки (самый новый файл) первых maxCovers альбомов в порядке {@link #queryAlbums}
+     * без прохода по всей медиатеке: берётся кэш альбомов, а если его нет — читаются
+     * только maxRows самых новых строк, по одной обложке на альбом.
+     * Элементы содержат coverId и coverPath.
+     */
+    @NonNull
+    public static List<HashMap<String, Object>> queryLatestCovers(@NonNull Context context, boolean images,
+                                                                  boolean videos, int maxCovers, int maxRows) {
+        List<HashMap<String, Object>> covers = new ArrayList<>();
+        String selection = mediaTypeSelection(images, videos);
+        if (selection == null) return covers;
+        List<HashMap<String, Object>> cached = cachedAlbums(images, videos);
+        if (cached != null) {
+            return cached.size() > maxCovers ? new ArrayList<>(cached.subList(0, maxCovers)) : cached;
+        }
+        String[] projection = new String[]{BUCKET_ID, MediaStore.Files.FileColumns._ID,
+                MediaStore.Files.FileColumns.DATA};
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, defaultSortOrder());
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, maxRows);
+            cursor = resolver.query(FILES_URI, projection, queryArgs, null);
+        } else {
+            try {
+                cursor = resolver.query(FILES_URI, projection, selection, null,
+                        defaultSortOrder() + " LIMIT " + maxRows);
+            } catch (RuntimeException e) {
+                cursor = resolver.query(FILES_URI, projection, selection, null, defaultSortOrder());
+            }
+        }
+        if (cursor == null) return covers;
+        HashSet<Long> buckets = new HashSet<>();
+        try {
+            // limit мог быть проигнорирован: число прочитанных строк ограничиваем сами
+            for (int row = 0; row < maxRows && covers.size() < maxCovers && cursor.moveToNext(); row++) {
+                if (cursor.isNull(0) || !buckets.add(cursor.getLong(0))) continue;
+                HashMap<String, Object> cover = new HashMap<>();
+                cover.put("coverId", cursor.getLong(1));
+                cover.put("coverPath", cursor.getString(2));
+                covers.add(cover);
+            }
+        } finally {
+            cursor.close();
+        }
+        return covers;
+    }
+
+    /**
+     * Один проход по курсору: колонки обложки читаются только у первой
+     * (самой новой) строки альбома, у остальных — только BUCKET_ID.
+     */
+    @NonNull
+    private static List<HashMap<String, Object>> scanAlbums(@NonNull Context context, boolean images, boolean videos) {
+        List<HashMap<String, Object>> albums = new ArrayList<>();
+        Cursor cursor = context.getContentResolver().query(FILES_URI,
+                new String[]{BUCKET_ID, MediaStore.Files.FileColumns._ID, MediaStore.Files.FileColumns.MEDIA_TYPE,
+                        MediaStore.Files.FileColumns.DATA, BUCKET_DISPLAY_NAME},
+                mediaTypeSelection(images, videos), null, defaultSortOrder());
+        if (cursor == null) return albums;
+        LinkedHashMap<Long, HashMap<String, Object>> buckets = new LinkedHashMap<>();
+        LinkedHashMap<Long, int[]> counts = new LinkedHashMap<>();
+        try {
+            while (cursor.moveToNext()) {
+                if (cursor.isNull(0)) continue;
+                long bucketId = cursor.getLong(0);
+                int[] count = counts.get(bucketId);
+                if (count != null) {
+                    count[0]++;
+                    continue;
+                }
+                counts.put(bucketId, new int[]{1});
+                HashMap<String, Object> album = new HashMap<>();
+                album.put("id", String.valueOf(bucketId));
+                album.put("name", cursor.getString(4));
+                long id = cursor.getLong(1);
+                album.put("coverId", id);
+                album.put("coverUri", contentUri(id, cursor.getInt(2)).toString());
+                album.put("coverPath", cursor.getString(3));
+                buckets.put(bucketId, album);
+            }
+        } finally {
+            cursor.close();
+        }
+        for (Map.Entry<Long, HashMap<String, Object>> entry : buckets.entrySet()) {
+            entry.getValue().put("count", counts.get(entry.getKey())[0]);
+            albums.add(entry.getValue());
+        }
+        return albums;
+    }
+
+    private static void ensureAlbumCacheObserver(@NonNull Context context) {
+        if (albumCacheObserver != null) return;
+        albumCacheObserver = new ContentObserver(null) {
+            @Override
+            public void onChange(boolean selfChange) {
+                synchronized (albumCacheLock) {
+                    albumCache.clear();
+                    albumCacheVersion++;
+                }
+            }
+        };
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        resolver.registerContentObserver(MediaStore.Images.Media.EXTERNAL_CONTENT_URI, true, albumCacheObserver);
+        resolver.registerContentObserver(MediaStore.Video.Media.EXTERNAL_CONTENT_URI, true, albumCacheObserver);
+    }
+
+    /**
+     * Страница файлов альбома (albumId == null — все альбомы), от новых к старым.
+     */
+    @NonNull
+    public static List<HashMap<String, Object>> queryAssets(@NonNull Context context, @Nullable String albumId,
+                                                           int offset, int limit, boolean images, boolean videos) {
+        List<HashMap<String, Object>> assets = new ArrayList<>();
+        String selection = mediaTypeSelection(images, videos);
+        if (selection == null || limit <= 0) return assets;
+        String[] selectionArgs = null;
+        if (albumId != null) {
+            selection = "(" + selection + ") AND " + BUCKET_ID + "=?";
+            selectionArgs = new String[]{albumId};
+        }
+        offset = Math.max(0, offset);
+
+        ContentResolver resolver = context.getContentResolver();
+        Cursor cursor;
+        boolean paged;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, defaultSortOrder());
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            queryArgs.putInt(ContentResolver.QUERY_ARG_OFFSET, offset);
+            cursor = resolver.query(FILES_URI, ASSET_PROJECTION, queryArgs, null);
+            paged = cursor != null && honoredPaging(cursor);
+        } else {
+            // LIMIT в sortOrder либо выполняется самим SQLite, либо запрос отвергается
+            try {
+                cursor = resolver.query(FILES_URI, ASSET_PROJECTION, selection, selectionArgs,
+                        defaultSortOrder() + " LIMIT " + limit + " OFFSET " + offset);
+                paged = true;
+            } catch (RuntimeException e) {
+                cursor = resolver.query(FILES_URI, ASSET_PROJECTION, selection, selectionArgs, defaultSortOrder());
+                paged = false;
+            }
+        }
+        if (cursor == null) return assets;
+        try {
+            // провайдер не ограничил выборку: читаем только своё окно
+            if (!paged && !cursor.moveToPosition(offset - 1)) return assets;
+            while (assets.size() < limit && cursor.moveToNext()) {
+                assets.add(readAsset(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return assets;
+    }
+
+    private static boolean honoredPaging(@NonNull Cursor cursor) {
+        Bundle extras = cursor.getExtras();
+        String[] honored = extras != null ? extras.getStringArray(ContentResolver.EXTRA_HONORED_ARGS) : null;
+        if (honored == null) return false;
+        List<String> args = Arrays.asList(honored);
+        return args.contains(ContentResolver.QUERY_ARG_LIMIT) && args.contains(ContentResolver.QUERY_ARG_OFFSET);
+    }
+
+    private static HashMap<String, Object> readAsset(@NonNull Cursor cursor) {
+        HashMap<String, Object> asset = new HashMap<>();
+        long id = cursor.getLong(0);
+        int mediaType = cursor.getInt(1);
+        asset.put("id", id);
+        asset.put("uri", contentUri(id, mediaType).toString());
+        asset.put("type", mediaType == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO ? "video" : "image");
+        asset.put("mimeType", cursor.getString(2));
+        asset.put("path", cursor.getString(3));
+        asset.put("width", cursor.getInt(4));
+        asset.put("height", cursor.getInt(5));
+        asset.put("duration", cursor.getLong(6));
+        asset.put("orientation", cursor.getInt(7));
+        asset.put("size", cursor.getLong(8));
+        asset.put("dateModified", cursor.getLong(9));
+        asset.put("albumId", cursor.getString(10));
+        return asset;
+    }
+
+    @NonNull
+    static Uri contentUri(long id, int mediaType) {
+        return ContentUris.withAppendedId(mediaType == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO
+                ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                : MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+    }
+
+    @Nullable
+    static String mediaTypeSelection(boolean images, boolean videos) {
+        if (images && videos) {
+            return MediaStore.Files.FileColumns.MEDIA_TYPE + " IN ("
+                    + MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE + ","
+                    + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO + ")";
+        }
+        if (images) {
+            return MediaStore.Files.FileColumns.MEDIA_TYPE + "=" + MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE;
+        }
+        if (videos) {
+            return MediaStore.Files.FileColumns.MEDIA_TYPE + "=" + MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+        }
+        return null;
+    }
+
+    private static String defaultSortOrder() {
+        return MediaStore.Files.FileColumns.DATE_MODIFIED + " DESC, " + MediaStore.Files.FileColumns._ID + " DESC";
+    }
+}
@@ -0,0 +1,35 @@
+package com.chavesgu.images_picker;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Модель Glide для системного превью файла из MediaStore
+ * (загружается через {@link MediaStoreThumbnailLoader}).
+ */
+public class MediaStoreThumbnail {
+    // content:// uri или путь к файлу, как их передаёт PictureSelector
+    public final String url;
+
+    public MediaStoreThumbnail(@NonNull String url) {
+        this.url = url;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MediaStoreThumbnail)) return false;
+        return url.equals(((MediaStoreThumbnail) o).url);
+    }
+
+    @Override
+    public int hashCode() {
+        return url.hashCode();
+    }
+
+    // используется ObjectKey как ключ дискового кэша
+    @NonNull
+    @Override
+    public String toString() {
+        return "MediaStoreThumbnail{" + url + "}";
+    }
+}
@@ -0,0 +1,229 @@
+package com.chavesgu.images_picker;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.Context;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.request.target.Target;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+
+/**
+ * Загружает уже готовое системное превью вместо декодирования оригинала.
+ * <p>
+ * API >= 29: ContentResolver.loadThumbnail. API < 29: файл MINI_KIND из таблиц
+ * MediaStore.Images/Video.Thumbnails; если его нет, загрузка завершается ошибкой
+ * и GlideEngine переходит к оригиналу.
+ */
+public class MediaStoreThumbnailLoader implements ModelLoader<MediaStoreThumbnail, Bitmap> {
+    // размер MINI_KIND, если Glide запрашивает исходный размер
+    private static final int DEFAULT_SIZE = 512;
+    private static final String FILES_URI_PREFIX = MediaStore.Files.getContentUri("external").toString() + "/";
+
+    private static Glide registeredGlide;
+
+    private final Context context;
+
+    MediaStoreThumbnailLoader(@NonNull Context context) {
+        this.context = context;
+    }
+
+    /**
+     * Регистрирует загрузчик в текущем экземпляре Glide.
+     * Повторяется, если экземпляр Glide сменился (например, приложение пересоздало его).
+     */
+    public static synchronized void register(@NonNull Context context) {
+        Glide glide = Glide.get(context);
+        if (glide == registeredGlide) return;
+        glide.getRegistry().prepend(MediaStoreThumbnail.class, Bitmap.class,
+                new Factory(context.getApplicationContext()));
+        registeredGlide = glide;
+    }
+
+    @Nullable
+    @Override
+    public LoadData<Bitmap> buildLoadData(@NonNull MediaStoreThumbnail model, int width, int height, @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model), new Fetcher(context, model,
+                width == Target.SIZE_ORIGINAL ? DEFAULT_SIZE : width,
+                height == Target.SIZE_ORIGINAL ? DEFAULT_SIZE : height));
+    }
+
+    @Override
+    public boolean handles(@NonNull MediaStoreThumbnail model) {
+        return true;
+    }
+
+    static class Factory implements ModelLoaderFactory<MediaStoreThumbnail, Bitmap> {
+        private final Context context;
+
+        Factory(@NonNull Context context) {
+            this.context = context;
+        }
+
+        @NonNull
+        @Override
+        public ModelLoader<MediaStoreThumbnail, Bitmap> build(@NonNull MultiModelLoaderFactory multiFactory) {
+            return new MediaStoreThumbnailLoader(context);
+        }
+
+        @Override
+        public void teardown() {
+        }
+    }
+
+    static class Fetcher implements DataFetcher<Bitmap> {
+        private final Context context;
+        private final MediaStoreThumbnail model;
+        private final int width;
+        private final int height;
+        private final CancellationSignal signal = new CancellationSignal();
+
+        Fetcher(@NonNull Context context, @NonNull MediaStoreThumbnail model, int width, int height) {
+            this.context = context;
+            this.model = model;
+            this.width = width;
+            this.height = height;
+        }
+
+        @Override
+        public void loadData(@NonNull Priority priority, @NonNull DataCallback<? super Bitmap> callback) {
+            Bitmap bitmap;
+            try {
+                bitmap = load();
+            } catch (IOException | RuntimeException e) {
+                callback.onLoadFailed(e);
+                return;
+            }
+            if (bitmap == null) {
+                callback.onLoadFailed(new FileNotFoundException("No system thumbnail for " + model.url));
+            } else {
+                callback.onDataReady(bitmap);
+            }
+        }
+
+        @Nullable
+        private Bitmap load() throws IOException {
+            ContentResolver resolver = context.getContentResolver();
+            Uri uri;
+            if (!model.url.startsWith("content://")) {
+                uri = findContentUri(resolver, model.url);
+            } else if (model.url.startsWith(FILES_URI_PREFIX)) {
+                // PictureSelector на Q отдаёт uri из MediaStore.Files, превью есть только у Images/Video
+                uri = typedContentUri(resolver, Uri.parse(model.url));
+            } else {
+                uri = Uri.parse(model.url);
+            }
+            if (uri == null) return null;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                return resolver.loadThumbnail(uri, new Size(width, height), signal);
+            }
+            return loadLegacyThumbnail(resolver, uri);
+        }
+
+        @Nullable
+        private Bitmap loadLegacyThumbnail(@NonNull ContentResolver resolver, @NonNull Uri uri) {
+            String id = String.valueOf(ContentUris.parseId(uri));
+            boolean isVideo = uri.getPath() != null && uri.getPath().contains("/video/");
+            Cursor cursor = isVideo
+                    ? resolver.query(MediaStore.Video.Thumbnails.EXTERNAL_CONTENT_URI,
+                    new String[]{MediaStore.Video.Thumbnails.DATA},
+                    MediaStore.Video.Thumbnails.VIDEO_ID + "=? AND " + MediaStore.Video.Thumbnails.KIND + "=?",
+                    new String[]{id, String.valueOf(MediaStore.Video.Thumbnails.MINI_KIND)}, null)
+                    : resolver.query(MediaStore.Images.Thumbnails.EXTERNAL_CONTENT_URI,
+                    new String[]{MediaStore.Images.Thumbnails.DATA},
+                    MediaStore.Images.Thumbnails.IMAGE_ID + "=? AND " + MediaStore.Images.Thumbnails.KIND + "=?",
+                    new String[]{id, String.valueOf(MediaStore.Images.Thumbnails.MINI_KIND)}, null);
+            if (cursor == null) return null;
+            String thumbPath = null;
+            try {
+                if (cursor.moveToFirst()) thumbPath = cursor.getString(0);
+            } finally {
+                cursor.close();
+            }
+            if (thumbPath == null) return null;
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(thumbPath, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) return null;
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = Thumbnails.sampleSizeFor(options.outWidth, options.outHeight, width, height);
+            return BitmapFactory.decodeFile(thumbPath, options);
+        }
+
+        /**
+         * content:// uri файла по пути: одна выборка из MediaStore.Files по DATA.
+         */
+        @Nullable
+        private static Uri findContentUri(@NonNull ContentResolver resolver, @NonNull String path) {
+            return queryContentUri(resolver, MediaStore.Files.getContentUri("external"),
+                    MediaStore.Files.FileColumns.DATA + "=?", new String[]{path});
+        }
+
+        @Nullable
+        private static Uri typedContentUri(@NonNull ContentResolver resolver, @NonNull Uri filesUri) {
+            return queryContentUri(resolver, filesUri, null, null);
+        }
+
+        @Nullable
+        private static Uri queryContentUri(@NonNull ContentResolver resolver, @NonNull Uri uri,
+                                           @Nullable String selection, @Nullable String[] selectionArgs) {
+            Cursor cursor = resolver.query(uri,
+                    new String[]{MediaStore.Files.FileColumns._ID, MediaStore.Files.FileColumns.MEDIA_TYPE},
+                    selection, selectionArgs, null);
+            if (cursor == null) return null;
+            try {
+                if (!cursor.moveToFirst()) return null;
+                long id = cursor.getLong(0);
+                boolean isVideo = cursor.getInt(1) == MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO;
+                return ContentUris.withAppendedId(isVideo
+                        ? MediaStore.Video.Media.EXTERNAL_CONTENT_URI
+                        : MediaStore.Images.Media.EXTERNAL_CONTENT_URI, id);
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        public void cleanup() {
+        }
+
+        @Override
+        public void cancel() {
+            signal.cancel();
+        }
+
+        @NonNull
+        @Override
+        public Class<Bitmap> getDataClass() {
+            return Bitmap.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.LOCAL;
+        }
+    }
+}
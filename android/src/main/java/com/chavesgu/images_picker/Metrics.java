@@ -0,0 +1,194 @@
+package com.chavesgu.images_picker;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Время по этапам обработки и скорость копирования.
+ * <p>
+ * Длительности собираются в гистограммы с корзинами по степеням двойки
+ * (в микросекундах), поэтому запись — это несколько сложений под коротким
+ * synchronized. Снимок отдаётся в Dart через getMetrics.
+ * В режиме трассировки этапы дополнительно пишутся в logcat.
+ */
+public class Metrics {
+    private static final String TAG = "ImagesPickerPlugin";
+
+    // от результата PictureSelector до отправки ответа в Dart
+    public static final String PICK_TOTAL = "pickTotal";
+    public static final String PATH_RESOLVE = "pathResolve";
+    public static final String COMPRESS = "compress";
+    public static final String THUMBNAIL_DECODE = "thumbnailDecode";
+    public static final String THUMBNAIL_ENCODE = "thumbnailEncode";
+    public static final String SIZE_STAT = "sizeStat";
+    // от handler.post до выполнения result.success / EventSink.success
+    public static final String CHANNEL_POST = "channelPost";
+    public static final String MEDIASTORE_INSERT = "mediaStoreInsert";
+    public static final String MEDIASTORE_WRITE = "mediaStoreWrite";
+    public static final String MEDIASTORE_PUBLISH = "mediaStorePublish";
+    // скорость копирования файлов при сохранении в альбом
+    public static final String COPY = "copy";
+
+    private static final int BUCKET_COUNT = 32;
+
+    private static final ConcurrentHashMap<String, Histogram> histograms = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Throughput> throughputs = new ConcurrentHashMap<>();
+    private static volatile boolean traceEnabled = false;
+
+    private static class Histogram {
+        // bucket i: [2^i, 2^(i+1)) мкс, bucket 0 также включает 0
+        final long[] buckets = new long[BUCKET_COUNT];
+        long count;
+        long totalMicros;
+        long minMicros = Long.MAX_VALUE;
+        long maxMicros;
+
+        synchronized void add(long micros) {
+            int bucket = micros <= 1 ? 0 : Math.min(BUCKET_COUNT - 1, 63 - Long.numberOfLeadingZeros(micros));
+            buckets[bucket]++;
+            count++;
+            totalMicros += micros;
+            if (micros < minMicros) minMicros = micros;
+            if (micros > maxMicros) maxMicros = micros;
+        }
+
+        synchronized HashMap<String, Object> toMap() {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("totalMicros", totalMicros);
+            map.put("minMicros", count > 0 ? minMicros : 0L);
+            map.put("maxMicros", maxMicros);
+            map.put("meanMicros", count > 0 ? totalMicros / count : 0L);
+            map.put("p50Micros", percentile(0.5));
+            map.put("p90Micros", percentile(0.9));
+            map.put("p99Micros", percentile(0.99));
+            ArrayList<Long> list = new ArrayList<>(BUCKET_COUNT);
+            for (long bucket : buckets) {
+                list.add(bucket);
+            }
+            map.put("buckets", list);
+            return map;
+        }
+
+        // верхняя граница корзины, в которую попадает перцентиль, но не больше max
+        private long percentile(double fraction) {
+            if (count == 0) return 0;
+            long rank = (long) Math.ceil(count * fraction);
+            long seen = 0;
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                seen += buckets[i];
+                if (seen >= rank) return Math.min(maxMicros, (2L << i) - 1);
+            }
+            return maxMicros;
+        }
+    }
+
+    private static class Throughput {
+        long count;
+        long bytes;
+        long nanos;
+        long minBytesPerSecond = Long.MAX_VALUE;
+        long maxBytesPerSecond;
+
+        synchronized void add(long bytes, long nanos) {
+            long bytesPerSecond = (long) (bytes * 1e9 / Math.max(1, nanos));
+            count++;
+            this.bytes += bytes;
+            this.nanos += nanos;
+            if (bytesPerSecond < minBytesPerSecond) minBytesPerSecond = bytesPerSecond;
+            if (bytesPerSecond > maxBytesPerSecond) maxBytesPerSecond = bytesPerSecond;
+        }
+
+        synchronized HashMap<String, Object> toMap() {
+            HashMap<String, Object> map = new HashMap<>();
+            map.put("count", count);
+            map.put("bytes", bytes);
+            map.put("micros", nanos / 1000);
+            map.put("bytesPerSecond", nanos > 0 ? (long) (bytes * 1e9 / nanos) : 0L);
+            map.put("minBytesPerSecond", count > 0 ? minBytesPerSecond : 0L);
+            map.put("maxBytesPerSecond", maxBytesPerSecond);
+            return map;
+        }
+    }
+
+    /**
+     * Время начала этапа для {@link #record(String, long)}.
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    public static void record(@NonNull String stage, long startNanos) {
+        recordNanos(stage, System.nanoTime() - startNanos);
+    }
+
+    public static void recordNanos(@NonNull String stage, long nanos) {
+        Histogram histogram = histograms.get(stage);
+        if (histogram == null) {
+            histogram = new Histogram();
+            Histogram existing = histograms.putIfAbsent(stage, histogram);
+            if (existing != null) histogram = existing;
+        }
+        histogram.add(Math.max(0, nanos / 1000));
+        if (traceEnabled) Log.d(TAG, stage + ": " + nanos / 1000 + "us");
+    }
+
+    /**
+     * Записывает скорость копирования bytes за nanos.
+     */
+    public static void recordBytes(@NonNull String stage, long bytes, long nanos) {
+        Throughput throughput = throughputs.get(stage);
+        if (throughput == null) {
+            throughput = new Throughput();
+            Throughput existing = throughputs.putIfAbsent(stage, throughput);
+            if (existing != null) throughput = existing;
+        }
+        throughput.add(bytes, nanos);
+        if (traceEnabled) Log.d(TAG, stage + ": " + bytes + " bytes in " + nanos / 1000 + "us");
+    }
+
+    /**
+     * {"stages": {stage: histogram}, "throughput": {stage: throughput}}
+     */
+    @NonNull
+    public static HashMap<String, Object> snapshot() {
+        HashMap<String, Object> stages = new HashMap<>();
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            stages.put(entry.getKey(), entry.getValue().toMap());
+        }
+        HashMap<String, Object> throughput = new HashMap<>();
+        for (Map.Entry<String, Throughput> entry : throughputs.entrySet()) {
+            throughput.put(entry.getKey(), entry.getValue().toMap());
+        }
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("stages", stages);
+        map.put("throughput", throughput);
+        return map;
+    }
+
+    public static void reset() {
+        histograms.clear();
+        throughputs.clear();
+    }
+
+    public static void setTraceEnabled(boolean enabled) {
+        traceEnabled = enabled;
+    }
+
+    public static boolean isTraceEnabled() {
+        return traceEnabled;
+    }
+
+    /**
+     * Пишет сообщение в logcat только в режиме трассировки.
+     */
+    public static void trace(@NonNull String message) {
+        if (traceEnabled) Log.d(TAG, message);
+    }
+}
@@ -0,0 +1,55 @@
+package com.chavesgu.images_picker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import io.flutter.plugin.common.MethodCall;
+
+/**
+ * Параметры обработки результата pick/openCamera.
+ */
+public class PickOptions {
+    public static final int DEFAULT_THUMB_DATA_MAX_BYTES = 64 * 1024;
+
+    @Nullable
+    public final Integer streamId;
+    public final ThumbnailOptions thumbOptions;
+    // ограничение размера картинки в байтах, 0 — без ограничения
+    public final long maxSize;
+    // верхняя граница качества при сжатии до maxSize, 1..100
+    public final int maxQuality;
+    // отдавать ли превью байтами в результате (thumbData) и их предел в байтах
+    public final boolean thumbData;
+    public final int thumbDataMaxBytes;
+    // не создавать превью видео при выборе: они запрашиваются позже через getThumbnail
+    public final boolean lazyThumbnails;
+
+    private PickOptions(@Nullable Integer streamId, @NonNull ThumbnailOptions thumbOptions, long maxSize, int maxQuality,
+                        boolean thumbData, int thumbDataMaxBytes, boolean lazyThumbnails) {
+        this.streamId = streamId;
+        this.thumbOptions = thumbOptions;
+        this.maxSize = maxSize;
+        this.maxQuality = maxQuality;
+        this.thumbData = thumbData;
+        this.thumbDataMaxBytes = thumbDataMaxBytes;
+        this.lazyThumbnails = lazyThumbnails;
+    }
+
+    public static PickOptions fromCall(@NonNull MethodCall call) {
+        Integer streamId = call.argument("streamId");
+        Integer maxSize = call.argument("maxSize");
+        Double quality = call.argument("quality");
+        Boolean thumbData = call.argument("thumbData");
+        Integer thumbDataMaxBytes = call.argument("thumbDataMaxBytes");
+        Boolean lazyThumbnails = call.argument("lazyThumbnails");
+        return new PickOptions(
+                streamId,
+                ThumbnailOptions.fromCall(call),
+                // maxSize в Dart задаётся в кб, как и на iOS (x1000)
+                maxSize != null && maxSize > 0 ? maxSize * 1000L : 0,
+                quality != null && quality > 0 ? (int) (quality * 100) : 90,
+                thumbData != null && thumbData,
+                thumbDataMaxBytes != null && thumbDataMaxBytes > 0 ? thumbDataMaxBytes : DEFAULT_THUMB_DATA_MAX_BYTES,
+                lazyThumbnails != null && lazyThumbnails);
+    }
+}
@@ -0,0 +1,160 @@
+package com.chavesgu.images_picker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Индекс сохранённых файлов для пропуска дубликатов: (альбом, размер, SHA-256) → uri.
+ * <p>
+ * Хранится в filesDir, не больше MAX_ENTRIES записей (старые вытесняются).
+ * Размеры ведутся отдельно, чтобы без хэширования понять, что совпадения быть не может.
+ * Это только подсказка: перед использованием uri проверяется, что файл ещё в галерее.
+ */
+public class SaveIndex {
+    private static final String FILE_NAME = "images_picker_save_index";
+    private static final String TMP_FILE_NAME = FILE_NAME + ".tmp";
+    static final int MAX_ENTRIES = 2000;
+
+    private static SaveIndex instance;
+
+    private final File file;
+    private final File tmpFile;
+    // ключ album\tsize\tdigest → uri строкой, в порядке добавления
+    private final LinkedHashMap<String, String> entries = new LinkedHashMap<>();
+    // album\tsize → число записей с таким размером
+    private final HashMap<String, Integer> sizes = new HashMap<>();
+
+    SaveIndex(@NonNull File directory) {
+        file = new File(directory, FILE_NAME);
+        tmpFile = new File(directory, TMP_FILE_NAME);
+        load();
+    }
+
+    @NonNull
+    public static synchronized SaveIndex get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new SaveIndex(context.getApplicationContext().getFilesDir());
+        }
+        return instance;
+    }
+
+    /**
+     * Есть ли в альбоме хотя бы один файл такого размера.
+     */
+    public synchronized boolean hasSize(@NonNull String album, long size) {
+        return sizes.containsKey(sizeKey(album, size));
+    }
+
+    @Nullable
+    public Uri find(@NonNull String album, long size, @NonNull String digest) {
+        String uri = findUri(album, size, digest);
+        return uri != null ? Uri.parse(uri) : null;
+    }
+
+    public void put(@NonNull String album, long size, @NonNull String digest, @NonNull Uri uri) {
+        put(album, size, digest, uri.toString());
+    }
+
+    @Nullable
+    synchronized String findUri(@NonNull String album, long size, @NonNull String digest) {
+        return entries.get(key(album, size, digest));
+    }
+
+    synchronized void put(@NonNull String album, long size, @NonNull String digest, @NonNull String uri) {
+        String key = key(album, size, digest);
+        if (entries.remove(key) == null) addSize(album, size);
+        entries.put(key, uri);
+        Iterator<Map.Entry<String, String>> it = entries.entrySet().iterator();
+        while (entries.size() > MAX_ENTRIES && it.hasNext()) {
+            String[] parts = it.next().getKey().split("\t", -1);
+            it.remove();
+            removeSize(parts[0], Long.parseLong(parts[1]));
+        }
+        write();
+    }
+
+    public synchronized void remove(@NonNull String album, long size, @NonNull String digest) {
+        if (entries.remove(key(album, size, digest)) != null) {
+            removeSize(album, size);
+            write();
+        }
+    }
+
+    private void addSize(String album, long size) {
+        String key = sizeKey(album, size);
+        Integer count = sizes.get(key);
+        sizes.put(key, count == null ? 1 : count + 1);
+    }
+
+    private void removeSize(String album, long size) {
+        String key = sizeKey(album, size);
+        Integer count = sizes.get(key);
+        if (count == null || count <= 1) {
+            sizes.remove(key);
+        } else {
+            sizes.put(key, count - 1);
+        }
+    }
+
+    private static String key(String album, long size, String digest) {
+        return album + "\t" + size + "\t" + digest;
+    }
+
+    private static String sizeKey(String album, long size) {
+        return album + "\t" + size;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 4) continue;
+                try {
+                    long size = Long.parseLong(parts[1]);
+                    entries.put(key(parts[0], size, parts[2]), parts[3]);
+                    addSize(parts[0], size);
+                } catch (NumberFormatException e) {
+                    // повреждённая строка — пропускаем
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write() {
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            for (Map.Entry<String, String> entry : entries.entrySet()) {
+                writer.write(entry.getKey());
+                writer.write('\t');
+                writer.write(entry.getValue());
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+}
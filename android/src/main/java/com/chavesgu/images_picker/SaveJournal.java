@@ -0,0 +1,190 @@
+package com.chavesgu.images_picker;
+
+import android.content.Context;
+import android.net.Uri;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Журнал незавершённых сохранений в filesDir.
+ * <p>
+ * Строка MediaStore (или файл на API < 29) записывается в журнал до копирования
+ * и удаляется из него после публикации или удаления. Если процесс умер посреди
+ * записи, при следующем запуске {@link FileSaver#recoverPendingSaves(Context)}
+ * найдёт такие записи и удалит или докопирует их.
+ * Разбираются только записи, найденные в файле при создании журнала (то есть
+ * оставшиеся от прошлых запусков процесса): сохранения текущего процесса, в том
+ * числе из других FlutterEngine, в них не попадают.
+ * Для исходного файла запоминаются длина и время изменения: докопировать можно,
+ * только если по этому пути лежит тот же файл, а не записанный заново.
+ * Записи съёмки камерой (capture) не имеют исходника: их содержимое пишет
+ * камера, поэтому при разборе они публикуются, если камера успела что-то записать.
+ * Журнал переписывается целиком через временный файл с fsync.
+ */
+public class SaveJournal {
+    private static final String FILE_NAME = "images_picker_save_journal";
+    private static final String TMP_FILE_NAME = FILE_NAME + ".tmp";
+
+    private static SaveJournal instance;
+
+    public static class Entry {
+        // content:// uri строки MediaStore или file:// uri файла на API < 29
+        public final Uri uri;
+        // исходный файл, если он есть (для докопирования)
+        @Nullable
+        public final String sourcePath;
+        // длина и lastModified исходника на момент начала записи, -1 — неизвестны
+        public final long sourceLength;
+        public final long sourceModified;
+        public final long startedMillis;
+        // запись создана для съёмки камерой
+        public final boolean capture;
+
+        Entry(@NonNull Uri uri, @Nullable String sourcePath, long sourceLength, long sourceModified,
+              long startedMillis, boolean capture) {
+            this.uri = uri;
+            this.sourcePath = sourcePath;
+            this.sourceLength = sourceLength;
+            this.sourceModified = sourceModified;
+            this.startedMillis = startedMillis;
+            this.capture = capture;
+        }
+
+        static Entry of(@NonNull Uri uri, @Nullable String sourcePath, long startedMillis) {
+            if (sourcePath == null) return new Entry(uri, null, -1, -1, startedMillis, false);
+            File source = new File(sourcePath);
+            return new Entry(uri, sourcePath, source.length(), source.lastModified(), startedMillis, false);
+        }
+    }
+
+    private final File file;
+    private final File tmpFile;
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>();
+    // записи прошлых запусков, ещё не отданные на разбор
+    private List<Entry> previousEntries = new ArrayList<>();
+
+    private SaveJournal(@NonNull File directory) {
+        file = new File(directory, FILE_NAME);
+        tmpFile = new File(directory, TMP_FILE_NAME);
+        load();
+    }
+
+    @NonNull
+    public static synchronized SaveJournal get(@NonNull Context context) {
+        if (instance == null) {
+            instance = new SaveJournal(context.getApplicationContext().getFilesDir());
+        }
+        return instance;
+    }
+
+    public synchronized void begin(@NonNull Uri uri, @Nullable String sourcePath) {
+        entries.put(uri.toString(), Entry.of(uri, sourcePath, System.currentTimeMillis()));
+        write();
+    }
+
+    /**
+     * Запись для съёмки камерой в строку uri.
+     */
+    public synchronized void beginCapture(@NonNull Uri uri) {
+        entries.put(uri.toString(), new Entry(uri, null, -1, -1, System.currentTimeMillis(), true));
+        write();
+    }
+
+    /**
+     * Одна запись журнала на всю пачку (пакетное сохранение).
+     */
+    public synchronized void beginAll(@NonNull List<Uri> uris, @NonNull List<String> sourcePaths) {
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < uris.size(); i++) {
+            Uri uri = uris.get(i);
+            if (uri != null) entries.put(uri.toString(), Entry.of(uri, sourcePaths.get(i), now));
+        }
+        write();
+    }
+
+    public synchronized void end(@NonNull Uri uri) {
+        if (entries.remove(uri.toString()) != null) write();
+    }
+
+    public synchronized void endAll(@NonNull List<Uri> uris) {
+        boolean changed = false;
+        for (Uri uri : uris) {
+            if (uri != null && entries.remove(uri.toString()) != null) changed = true;
+        }
+        if (changed) write();
+    }
+
+    /**
+     * Записи, оставшиеся от прошлых запусков процесса. Отдаются один раз:
+     * повторный вызов (например, из второго FlutterEngine) вернёт пустой список.
+     */
+    @NonNull
+    public synchronized List<Entry> takePreviousEntries() {
+        List<Entry> result = previousEntries;
+        previousEntries = new ArrayList<>();
+        return result;
+    }
+
+    private void load() {
+        if (!file.exists()) return;
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // uri, source, started, sourceLength, sourceModified[, capture]
+                String[] parts = line.split("\t", -1);
+                if (parts.length != 5 && parts.length != 6) continue;
+                try {
+                    Uri uri = Uri.parse(parts[0]);
+                    boolean capture = parts.length == 6 && "1".equals(parts[5]);
+                    entries.put(parts[0], new Entry(uri, parts[1].isEmpty() ? null : parts[1],
+                            Long.parseLong(parts[3]), Long.parseLong(parts[4]), Long.parseLong(parts[2]), capture));
+                } catch (NumberFormatException e) {
+                    // повреждённая строка (запись прервалась) — пропускаем
+                }
+            }
+            previousEntries = new ArrayList<>(entries.values());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void write() {
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"));
+            for (Entry entry : entries.values()) {
+                writer.write(entry.uri.toString());
+                writer.write('\t');
+                writer.write(entry.sourcePath != null ? entry.sourcePath : "");
+                writer.write('\t');
+                writer.write(String.valueOf(entry.startedMillis));
+                writer.write('\t');
+                writer.write(String.valueOf(entry.sourceLength));
+                writer.write('\t');
+                writer.write(String.valueOf(entry.sourceModified));
+                writer.write('\t');
+                writer.write(entry.capture ? "1" : "0");
+                writer.newLine();
+            }
+            writer.flush();
+            out.getFD().sync();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (!tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.chavesgu.images_picker;
+
+import android.os.CancellationSignal;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Одна операция сохранения: id для Dart, сигнал отмены и прогресс
+ * с ограничением частоты событий.
+ */
+public class SaveOperation implements FileSaver.ProgressListener {
+    // не чаще одного события прогресса в 100 мс (последнее отправляется всегда)
+    private static final long MIN_INTERVAL_NANOS = 100L * 1000 * 1000;
+
+    public interface Callback {
+        void onProgress(@NonNull SaveOperation operation, long bytesWritten, long totalBytes, long bytesPerSecond);
+    }
+
+    public final int id;
+    public final CancellationSignal signal = new CancellationSignal();
+    private final Callback callback;
+    private long startNanos;
+    private long lastEmitNanos;
+
+    public SaveOperation(int id, @NonNull Callback callback) {
+        this.id = id;
+        this.callback = callback;
+    }
+
+    /**
+     * Вызывается непосредственно перед копированием, чтобы скорость
+     * не учитывала время ожидания в очереди.
+     */
+    public void start() {
+        startNanos = System.nanoTime();
+        lastEmitNanos = 0;
+    }
+
+    public void cancel() {
+        signal.cancel();
+    }
+
+    public boolean isCanceled() {
+        return signal.isCanceled();
+    }
+
+    @Override
+    public void onProgress(long bytesWritten, long totalBytes) {
+        long now = System.nanoTime();
+        // totalBytes < 0 — размер неизвестен (сохранение из content:// uri)
+        boolean last = totalBytes >= 0 && bytesWritten >= totalBytes;
+        if (!last && now - lastEmitNanos < MIN_INTERVAL_NANOS) return;
+        lastEmitNanos = now;
+        long elapsed = Math.max(1, now - startNanos);
+        long bytesPerSecond = (long) (bytesWritten * 1e9 / elapsed);
+        callback.onProgress(this, bytesWritten, totalBytes, bytesPerSecond);
+    }
+}
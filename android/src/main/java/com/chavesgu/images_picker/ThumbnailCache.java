@@ -0,0 +1,195 @@
+package com.chavesgu.images_picker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Дисковый кэш превью с вытеснением LRU по суммарному размеру файлов.
+ * <p>
+ * Ключ строится из пути, размера и времени изменения исходного файла, а также
+ * параметров превью, поэтому изменённый файл получает новое превью.
+ * Порядок доступа хранится в небольшом индексном файле и переживает перезапуск.
+ */
+public class ThumbnailCache {
+    public static final long DEFAULT_MAX_BYTES = 50L * 1024 * 1024;
+
+    private static final String DIR_NAME = "images_picker_thumbs";
+    private static final String INDEX_NAME = "index";
+    private static final String INDEX_TMP_NAME = "index.tmp";
+
+    private final File directory;
+    private final File indexFile;
+    // имя файла -> размер в байтах, в порядке доступа (старые первыми)
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(64, 0.75f, true);
+    private long maxBytes;
+    private long totalBytes;
+    private boolean loaded;
+    private boolean dirty;
+
+    public ThumbnailCache(@NonNull File cacheDir, long maxBytes) {
+        this.directory = new File(cacheDir, DIR_NAME);
+        this.indexFile = new File(directory, INDEX_NAME);
+        this.maxBytes = maxBytes;
+    }
+
+    @NonNull
+    public static String key(@NonNull String path, @NonNull ThumbnailOptions options) {
+        File file = new File(path);
+        String raw = path + '|' + file.length() + '|' + file.lastModified() + '|' + options.cacheKey();
+        return sha1(raw) + options.extension();
+    }
+
+    /**
+     * Возвращает путь к превью из кэша или null, если его нет.
+     */
+    @Nullable
+    public synchronized String get(@NonNull String key) {
+        ensureLoaded();
+        if (entries.get(key) == null) return null;
+        File file = new File(directory, key);
+        if (!file.exists()) {
+            Long size = entries.remove(key);
+            if (size != null) totalBytes -= size;
+            dirty = true;
+            return null;
+        }
+        dirty = true;
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Временный файл в папке кэша, который затем передаётся в {@link #put}.
+     */
+    @NonNull
+    public File newTempFile(@NonNull String key) throws IOException {
+        synchronized (this) {
+            ensureLoaded();
+        }
+        return File.createTempFile(key, ".tmp", directory);
+    }
+
+    /**
+     * Переносит готовый файл под ключ key и возвращает итоговый путь.
+     */
+    @Nullable
+    public synchronized String put(@NonNull String key, @NonNull File tmpFile) {
+        ensureLoaded();
+        File target = new File(directory, key);
+        if (!tmpFile.renameTo(target)) {
+            tmpFile.delete();
+            return null;
+        }
+        Long previous = entries.put(key, target.length());
+        if (previous != null) totalBytes -= previous;
+        totalBytes += target.length();
+        // только что добавленный файл не вытесняется, даже если он больше лимита:
+        // его путь сейчас вернётся в Dart. Он уйдёт при следующем вытеснении.
+        trimToSize(key);
+        writeIndex();
+        return target.getAbsolutePath();
+    }
+
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        if (!loaded) return;
+        trimToSize(null);
+        writeIndex();
+    }
+
+    /**
+     * Сохраняет порядок доступа, если он изменился после последней записи.
+     */
+    public synchronized void flush() {
+        if (loaded && dirty) writeIndex();
+    }
+
+    /**
+     * Вытесняет старые файлы, пока кэш больше maxBytes; файл keep не трогается.
+     */
+    private void trimToSize(@Nullable String keep) {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        while (totalBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) continue;
+            new File(directory, entry.getKey()).delete();
+            totalBytes -= entry.getValue();
+            iterator.remove();
+            dirty = true;
+        }
+    }
+
+    private void ensureLoaded() {
+        if (loaded) return;
+        loaded = true;
+        if (!directory.exists() && !directory.mkdirs()) return;
+        if (indexFile.exists()) {
+            try (BufferedReader reader = new BufferedReader(new FileReader(indexFile))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    String name = line.trim();
+                    if (name.isEmpty()) continue;
+                    File file = new File(directory, name);
+                    if (!file.exists()) continue;
+                    Long previous = entries.put(name, file.length());
+                    if (previous != null) totalBytes -= previous;
+                    totalBytes += file.length();
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        // удаляем файлы, которых нет в индексе (например, после падения процесса)
+        Set<String> known = new HashSet<>(entries.keySet());
+        known.add(INDEX_NAME);
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!known.contains(file.getName())) file.delete();
+            }
+        }
+        trimToSize(null);
+    }
+
+    private void writeIndex() {
+        File tmp = new File(directory, INDEX_TMP_NAME);
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(tmp))) {
+            for (String name : entries.keySet()) {
+                writer.write(name);
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        if (tmp.renameTo(indexFile)) dirty = false;
+    }
+
+    private static String sha1(String value) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] hash = digest.digest(value.getBytes(Charset.forName("UTF-8")));
+            StringBuilder builder = new StringBuilder(hash.length * 2);
+            for (byte b : hash) {
+                builder.append(String.format("%02x", b));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            return Integer.toHexString(value.hashCode());
+        }
+    }
+}
@@ -0,0 +1,165 @@
+package com.chavesgu.images_picker;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Превью по запросу (getThumbnail).
+ * <p>
+ * Одновременные запросы одного и того же превью объединяются в одну задачу.
+ * Ключ объединения — путь и параметры превью, без обращения к диску: ключ кэша
+ * (размер и время изменения файла) считается уже на потоке пула.
+ * Запрос можно отменить по requestId (плитка ушла с экрана): если у задачи
+ * не осталось ожидающих и она ещё не начата, она снимается из очереди.
+ * Повторный requestId отменяет предыдущий запрос с тем же id.
+ */
+public class ThumbnailLoader {
+    public interface Callback {
+        void onResult(@Nullable String thumbPath);
+    }
+
+    private static class Job {
+        final String key;
+        // requestId -> callback
+        final HashMap<Integer, Callback> waiters = new HashMap<>();
+        Future<?> future;
+        // оба флага меняются под блокировкой загрузчика: FutureTask.cancel(false)
+        // возвращает true и для уже выполняющейся задачи, поэтому на него не полагаемся
+        boolean started;
+        boolean cancelled;
+
+        Job(String key) {
+            this.key = key;
+        }
+    }
+
+    private final ThumbnailCache cache;
+    private final ExecutorService pool;
+    private final HashMap<String, Job> jobs = new HashMap<>();
+    private final HashMap<Integer, Job> requests = new HashMap<>();
+    // запросы без requestId получают отрицательные id, чтобы не пересекаться с Dart
+    private int nextAnonymousId = -1;
+
+    public ThumbnailLoader(@NonNull ThumbnailCache cache, @NonNull ExecutorService pool) {
+        this.cache = cache;
+        this.pool = pool;
+    }
+
+    /**
+     * Callback вызывается на потоке пула (или сразу, если пул уже остановлен);
+     * thumbPath равен null при ошибке или отмене.
+     */
+    public void load(@Nullable Integer requestId, @NonNull final String path, @NonNull final ThumbnailOptions options,
+                     @NonNull Callback callback) {
+        String key = path + '|' + options.cacheKey();
+        Callback replaced = null;
+        boolean rejected = false;
+        synchronized (this) {
+            int id = requestId != null ? requestId : nextAnonymousId--;
+            if (requests.containsKey(id)) replaced = detach(id);
+            Job job = jobs.get(key);
+            if (job == null) {
+                final Job created = new Job(key);
+                try {
+                    created.future = pool.submit(() -> run(created, path, options));
+                    jobs.put(key, created);
+                    job = created;
+                } catch (RejectedExecutionException e) {
+                    rejected = true;
+                }
+            }
+            if (job != null) {
+                job.waiters.put(id, callback);
+                requests.put(id, job);
+            }
+        }
+        if (replaced != null) replaced.onResult(null);
+        if (rejected) callback.onResult(null);
+    }
+
+    /**
+     * Возвращает false, если запрос уже завершён или неизвестен.
+     */
+    public boolean cancel(int requestId) {
+        Callback callback;
+        synchronized (this) {
+            if (!requests.containsKey(requestId)) return false;
+            callback = detach(requestId);
+        }
+        if (callback != null) callback.onResult(null);
+        return true;
+    }
+
+    /**
+     * Снимает запрос с его задачи; вызывается под блокировкой.
+     */
+    @Nullable
+    private Callback detach(int requestId) {
+        Job job = requests.remove(requestId);
+        if (job == null) return null;
+        Callback callback = job.waiters.remove(requestId);
+        // уже начатую задачу не прерываем и оставляем в jobs до завершения:
+        // готовое превью попадёт в кэш, а новый запрос того же превью присоединится к ней
+        if (job.waiters.isEmpty() && !job.started) {
+            job.cancelled = true;
+            job.future.cancel(false);
+            jobs.remove(job.key);
+        }
+        return callback;
+    }
+
+    /**
+     * Отменяет все запросы; ожидающие получают null.
+     */
+    public void cancelAll() {
+        ArrayList<Callback> callbacks = new ArrayList<>();
+        synchronized (this) {
+            for (Job job : jobs.values()) {
+                job.cancelled = true;
+                job.future.cancel(false);
+                callbacks.addAll(job.waiters.values());
+                job.waiters.clear();
+            }
+            jobs.clear();
+            requests.clear();
+        }
+        for (Callback callback : callbacks) {
+            callback.onResult(null);
+        }
+    }
+
+    private void run(Job job, String path, ThumbnailOptions options) {
+        synchronized (this) {
+            // снята из очереди, но поток пула уже успел её взять
+            if (job.cancelled) return;
+            job.started = true;
+        }
+        String thumbPath = null;
+        try {
+            thumbPath = Thumbnails.createThumb(cache, path, options);
+        } finally {
+            complete(job, thumbPath);
+        }
+    }
+
+    private void complete(Job job, @Nullable String thumbPath) {
+        ArrayList<Callback> callbacks;
+        synchronized (this) {
+            if (jobs.get(job.key) == job) jobs.remove(job.key);
+            for (Integer id : job.waiters.keySet()) {
+                requests.remove(id);
+            }
+            callbacks = new ArrayList<>(job.waiters.values());
+            job.waiters.clear();
+        }
+        for (Callback callback : callbacks) {
+            callback.onResult(thumbPath);
+        }
+    }
+}
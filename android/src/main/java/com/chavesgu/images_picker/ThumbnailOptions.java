@@ -0,0 +1,75 @@
+package com.chavesgu.images_picker;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import androidx.annotation.NonNull;
+
+import io.flutter.plugin.common.MethodCall;
+
+/**
+ * Параметры превью: максимальный размер, качество и формат.
+ */
+public class ThumbnailOptions {
+    public static final int DEFAULT_MAX_SIZE = 512;
+    public static final int DEFAULT_QUALITY = 80;
+
+    public final int maxWidth;
+    public final int maxHeight;
+    public final int quality;
+    public final String format;
+
+    public ThumbnailOptions(int maxWidth, int maxHeight, int quality, @NonNull String format) {
+        this.maxWidth = maxWidth > 0 ? maxWidth : DEFAULT_MAX_SIZE;
+        this.maxHeight = maxHeight > 0 ? maxHeight : DEFAULT_MAX_SIZE;
+        this.quality = Math.max(1, Math.min(100, quality));
+        this.format = format;
+    }
+
+    public static ThumbnailOptions fromCall(@NonNull MethodCall call) {
+        Integer maxWidth = call.argument("thumbMaxWidth");
+        Integer maxHeight = call.argument("thumbMaxHeight");
+        Double quality = call.argument("thumbQuality");
+        String format = call.argument("thumbFormat");
+        return new ThumbnailOptions(
+                maxWidth != null ? maxWidth : DEFAULT_MAX_SIZE,
+                maxHeight != null ? maxHeight : DEFAULT_MAX_SIZE,
+                quality != null ? (int) (quality * 100) : DEFAULT_QUALITY,
+                format != null ? format : "ThumbFormat.jpeg");
+    }
+
+    @SuppressWarnings("deprecation")
+    public Bitmap.CompressFormat compressFormat() {
+        switch (format) {
+            case "ThumbFormat.png":
+                return Bitmap.CompressFormat.PNG;
+            case "ThumbFormat.webp":
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+                    return quality == 100
+                            ? Bitmap.CompressFormat.WEBP_LOSSLESS
+                            : Bitmap.CompressFormat.WEBP_LOSSY;
+                }
+                return Bitmap.CompressFormat.WEBP;
+            default:
+                return Bitmap.CompressFormat.JPEG;
+        }
+    }
+
+    /**
+     * Часть ключа кэша, зависящая от параметров превью.
+     */
+    public String cacheKey() {
+        return maxWidth + "x" + maxHeight + "q" + quality + format;
+    }
+
+    public String extension() {
+        switch (format) {
+            case "ThumbFormat.png":
+                return ".png";
+            case "ThumbFormat.webp":
+                return ".webp";
+            default:
+                return ".jpg";
+        }
+    }
+}
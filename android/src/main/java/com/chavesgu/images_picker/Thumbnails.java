@@ -0,0 +1,296 @@
+package com.chavesgu.images_picker;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.MediaMetadataRetriever;
+import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Создание уменьшенных превью: файлы для видео и байты в памяти для картинок и видео.
+ */
+public class Thumbnails {
+    // размеры MINI_KIND у ThumbnailUtils
+    private static final int MINI_KIND_WIDTH = 512;
+    private static final int MINI_KIND_HEIGHT = 384;
+
+    /**
+     * Возвращает превью видео из кэша или создаёт его: кадр не больше
+     * maxWidth x maxHeight кодируется сразу в файл кэша.
+     * Возвращает путь к файлу или null.
+     */
+    @Nullable
+    public static String createVideoThumb(@NonNull ThumbnailCache cache, @NonNull String path, @NonNull ThumbnailOptions options) {
+        return createVideoThumb(cache, path, options, null);
+    }
+
+    /**
+     * То же, но кадр берётся из уже открытого retriever, чтобы не открывать файл повторно.
+     */
+    @Nullable
+    public static String createVideoThumb(@NonNull ThumbnailCache cache, @NonNull String path, @NonNull ThumbnailOptions options,
+                                          @Nullable MediaMetadataRetriever retriever) {
+        String key = ThumbnailCache.key(path, options);
+        String cached = cache.get(key);
+        if (cached != null) return cached;
+
+        long decodeStart = Metrics.start();
+        Bitmap bitmap = retriever != null
+                ? decodeVideoFrame(retriever, options)
+                : decodeVideoFrame(path, options);
+        if (bitmap == null) return null;
+        Metrics.record(Metrics.THUMBNAIL_DECODE, decodeStart);
+        try {
+            File outputFile = cache.newTempFile(key);
+            if (!writeBitmap(bitmap, options, outputFile)) {
+                outputFile.delete();
+                return null;
+            }
+            return cache.put(key, outputFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            bitmap.recycle();
+        }
+        return null;
+    }
+
+    @Nullable
+    @SuppressWarnings("deprecation")
+    static Bitmap decodeVideoFrame(@NonNull String path, @NonNull ThumbnailOptions options) {
+        Bitmap bitmap;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+            // API 29+: кадр извлекается сразу в нужном размере
+            try {
+                bitmap = ThumbnailUtils.createVideoThumbnail(new File(path),
+                        new Size(options.maxWidth, options.maxHeight), null);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        } else {
+            boolean fitsMini = options.maxWidth <= MINI_KIND_WIDTH && options.maxHeight <= MINI_KIND_HEIGHT;
+            bitmap = ThumbnailUtils.createVideoThumbnail(path, fitsMini
+                    ? MediaStore.Video.Thumbnails.MINI_KIND
+                    : MediaStore.Video.Thumbnails.FULL_SCREEN_KIND);
+        }
+        if (bitmap == null) return null;
+        return scaleDown(bitmap, options.maxWidth, options.maxHeight);
+    }
+
+    @Nullable
+    static Bitmap decodeVideoFrame(@NonNull MediaMetadataRetriever retriever, @NonNull ThumbnailOptions options) {
+        Bitmap bitmap;
+        try {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O_MR1) {
+                // API 27+: кадр декодируется сразу в нужном размере
+                bitmap = retriever.getScaledFrameAtTime(-1, MediaMetadataRetriever.OPTION_CLOSEST_SYNC,
+                        options.maxWidth, options.maxHeight);
+            } else {
+                bitmap = retriever.getFrameAtTime(-1);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            return null;
+        }
+        if (bitmap == null) return null;
+        return scaleDown(bitmap, options.maxWidth, options.maxHeight);
+    }
+
+    /**
+     * Превью для getThumbnail: тип файла определяется по заголовку —
+     * если это декодируемая картинка, превью строится из неё, иначе как для видео.
+     */
+    @Nullable
+    public static String createThumb(@NonNull ThumbnailCache cache, @NonNull String path, @NonNull ThumbnailOptions options) {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return createVideoThumb(cache, path, options);
+        }
+        String key = ThumbnailCache.key(path, options);
+        String cached = cache.get(key);
+        if (cached != null) return cached;
+
+        long decodeStart = Metrics.start();
+        Bitmap bitmap = decodeImage(path, options);
+        if (bitmap == null) return null;
+        Metrics.record(Metrics.THUMBNAIL_DECODE, decodeStart);
+        try {
+            File outputFile = cache.newTempFile(key);
+            if (!writeBitmap(bitmap, options, outputFile)) {
+                outputFile.delete();
+                return null;
+            }
+            return cache.put(key, outputFile);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            bitmap.recycle();
+        }
+        return null;
+    }
+
+    /**
+     * Небольшое превью картинки в памяти с ограничением maxBytes.
+     */
+    @Nullable
+    public static byte[] createImageThumbData(@NonNull String path, @NonNull ThumbnailOptions options, int maxBytes) {
+        long decodeStart = Metrics.start();
+        Bitmap bitmap = decodeImage(path, options);
+        if (bitmap == null) return null;
+        Metrics.record(Metrics.THUMBNAIL_DECODE, decodeStart);
+        try {
+            return encodeWithLimit(bitmap, options, maxBytes);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Декодирует картинку сразу уменьшенной (inSampleSize) и поворачивает по EXIF.
+     */
+    @Nullable
+    static Bitmap decodeImage(@NonNull String path, @NonNull ThumbnailOptions options) {
+        BitmapFactory.Options decodeOptions = new BitmapFactory.Options();
+        decodeOptions.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, decodeOptions);
+        if (decodeOptions.outWidth <= 0 || decodeOptions.outHeight <= 0) return null;
+        decodeOptions.inJustDecodeBounds = false;
+        decodeOptions.inSampleSize = sampleSizeFor(decodeOptions.outWidth, decodeOptions.outHeight,
+                options.maxWidth, options.maxHeight);
+        Bitmap bitmap = BitmapFactory.decodeFile(path, decodeOptions);
+        if (bitmap == null) return null;
+        return rotate(scaleDown(bitmap, options.maxWidth, options.maxHeight), MediaInfo.imageOrientation(path));
+    }
+
+    /**
+     * Превью видео в памяти из уже готового файла превью: если он помещается
+     * в maxBytes, байты отдаются как есть, иначе файл перекодируется меньше.
+     */
+    @Nullable
+    public static byte[] readThumbData(@NonNull String thumbPath, @NonNull ThumbnailOptions options, int maxBytes) {
+        File file = new File(thumbPath);
+        long length = file.length();
+        if (length > 0 && length <= maxBytes) {
+            byte[] data = new byte[(int) length];
+            try (FileInputStream in = new FileInputStream(file)) {
+                int offset = 0;
+                int read;
+                while (offset < data.length && (read = in.read(data, offset, data.length - offset)) > 0) {
+                    offset += read;
+                }
+                if (offset == data.length) return data;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(thumbPath);
+        if (bitmap == null) return null;
+        try {
+            return encodeWithLimit(bitmap, options, maxBytes);
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    /**
+     * Кодирует bitmap не больше maxBytes: сначала снижается качество,
+     * затем размеры. PNG качество игнорирует, поэтому для него сразу уменьшаются размеры.
+     * Возвращает null, если уложиться не удалось.
+     */
+    @Nullable
+    static byte[] encodeWithLimit(@NonNull Bitmap bitmap, @NonNull ThumbnailOptions options, int maxBytes) {
+        long start = Metrics.start();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(maxBytes, 256 * 1024));
+        Bitmap current = bitmap;
+        int quality = options.quality;
+        boolean lossy = options.compressFormat() != Bitmap.CompressFormat.PNG;
+        try {
+            for (int attempt = 0; attempt < 6; attempt++) {
+                out.reset();
+                current.compress(options.compressFormat(), quality, out);
+                if (out.size() <= maxBytes) return out.toByteArray();
+                if (lossy && quality > 40) {
+                    quality = Math.max(40, quality * 7 / 10);
+                } else {
+                    Bitmap smaller = Bitmap.createScaledBitmap(current,
+                            Math.max(1, current.getWidth() * 7 / 10),
+                            Math.max(1, current.getHeight() * 7 / 10), true);
+                    if (current != bitmap) current.recycle();
+                    current = smaller;
+                }
+            }
+            return null;
+        } finally {
+            if (current != bitmap) current.recycle();
+            Metrics.record(Metrics.THUMBNAIL_ENCODE, start);
+        }
+    }
+
+    static int sampleSizeFor(int width, int height, int maxWidth, int maxHeight) {
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= maxWidth && height / (sampleSize * 2) >= maxHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    @NonNull
+    static Bitmap rotate(@NonNull Bitmap bitmap, int degrees) {
+        if (degrees == 0) return bitmap;
+        Matrix matrix = new Matrix();
+        matrix.postRotate(degrees);
+        Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        if (rotated != bitmap) bitmap.recycle();
+        return rotated;
+    }
+
+    /**
+     * Уменьшает bitmap с сохранением пропорций, если он больше заданного размера.
+     * Исходный bitmap освобождается, если был создан новый.
+     */
+    @NonNull
+    static Bitmap scaleDown(@NonNull Bitmap bitmap, int maxWidth, int maxHeight) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        float scale = Math.min((float) maxWidth / width, (float) maxHeight / height);
+        if (scale >= 1f) return bitmap;
+        Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                Math.max(1, Math.round(width * scale)),
+                Math.max(1, Math.round(height * scale)), true);
+        if (scaled != bitmap) bitmap.recycle();
+        return scaled;
+    }
+
+    /**
+     * Кодирует bitmap прямо в файл, без промежуточного массива байт.
+     */
+    static boolean writeBitmap(@NonNull Bitmap bitmap, @NonNull ThumbnailOptions options, @NonNull File file) {
+        long start = Metrics.start();
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+            return bitmap.compress(options.compressFormat(), options.quality, out);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return false;
+        } finally {
+            Metrics.record(Metrics.THUMBNAIL_ENCODE, start);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.chavesgu.images_picker;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageCompressorTest {
+    // размер результата растёт линейно с качеством, содержимое — само качество
+    private static class LinearEncoder implements ImageCompressor.Encoder {
+        final List<Integer> tried = new ArrayList<>();
+
+        @Override
+        public void encode(int quality, ByteArrayOutputStream out) {
+            tried.add(quality);
+            for (int i = 0; i < quality * 10; i++) {
+                out.write(quality);
+            }
+        }
+    }
+
+    @Test
+    public void findsHighestQualityThatFits() {
+        LinearEncoder encoder = new LinearEncoder();
+        ImageCompressor.Buffers buffers = new ImageCompressor.Buffers(16);
+        int quality = ImageCompressor.searchQuality(encoder, 100, 500, buffers);
+
+        assertEquals(50, quality);
+        assertEquals(500, buffers.best.size());
+        assertEquals(50, buffers.best.toByteArray()[0]);
+        assertTrue(encoder.tried.size() <= ImageCompressor.MAX_QUALITY_STEPS);
+    }
+
+    @Test
+    public void neverExceedsMaxQuality() {
+        LinearEncoder encoder = new LinearEncoder();
+        ImageCompressor.Buffers buffers = new ImageCompressor.Buffers(16);
+        int quality = ImageCompressor.searchQuality(encoder, 80, Long.MAX_VALUE, buffers);
+
+        assertEquals(80, quality);
+        for (int tried : encoder.tried) {
+            assertTrue(tried <= 80);
+        }
+    }
+
+    @Test
+    public void returnsMinusOneWhenNothingFits() {
+        LinearEncoder encoder = new LinearEncoder();
+        ImageCompressor.Buffers buffers = new ImageCompressor.Buffers(16);
+        int quality = ImageCompressor.searchQuality(encoder, 100, ImageCompressor.MIN_QUALITY * 10 - 1, buffers);
+
+        assertEquals(-1, quality);
+        assertNull(buffers.best);
+        assertTrue(encoder.tried.contains(ImageCompressor.MIN_QUALITY));
+    }
+
+    @Test
+    public void triesMinQualityWhenOnlyItFits() {
+        LinearEncoder encoder = new LinearEncoder();
+        ImageCompressor.Buffers buffers = new ImageCompressor.Buffers(16);
+        int quality = ImageCompressor.searchQuality(encoder, 100, ImageCompressor.MIN_QUALITY * 10, buffers);
+
+        assertEquals(ImageCompressor.MIN_QUALITY, quality);
+    }
+
+    @Test
+    public void bestBufferSurvivesLaterMisses() {
+        LinearEncoder encoder = new LinearEncoder();
+        ImageCompressor.Buffers buffers = new ImageCompressor.Buffers(16);
+        int quality = ImageCompressor.searchQuality(encoder, 100, 700, buffers);
+
+        // последняя попытка могла не поместиться, но best хранит лучший результат
+        assertEquals(quality * 10, buffers.best.size());
+        assertEquals(quality, buffers.best.toByteArray()[0]);
+        assertTrue(buffers.best.size() <= 700);
+    }
+
+    @Test
+    public void sampleSizeKeepsFullResolutionForLargeBudget() {
+        assertEquals(1, ImageCompressor.sampleSizeFor(4000, 3000, 1000 * 1000));
+    }
+
+    @Test
+    public void sampleSizeShrinksForSmallBudget() {
+        assertEquals(2, ImageCompressor.sampleSizeFor(4000, 3000, 100 * 1000));
+        assertEquals(8, ImageCompressor.sampleSizeFor(4000, 3000, 5 * 1000));
+    }
+
+    @Test
+    public void sampleSizeIsPowerOfTwo() {
+        for (long maxBytes = 1000; maxBytes < 10 * 1000 * 1000; maxBytes *= 3) {
+            int sampleSize = ImageCompressor.sampleSizeFor(8000, 6000, maxBytes);
+            assertEquals(0, sampleSize & (sampleSize - 1));
+        }
+    }
+}
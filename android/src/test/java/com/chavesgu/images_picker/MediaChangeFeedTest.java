@@ -0,0 +1,81 @@
+package com.chavesgu.images_picker;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MediaChangeFeedTest {
+    @Test
+    public void diffIdsReportsDeletedAndInserted() {
+        List<Long> deleted = new ArrayList<>();
+        List<Long> inserted = new ArrayList<>();
+        MediaChangeFeed.diffIds(new long[]{1, 3, 5, 7}, new long[]{2, 3, 7, 8}, deleted, inserted);
+
+        assertEquals(Arrays.asList(1L, 5L), deleted);
+        assertEquals(Arrays.asList(2L, 8L), inserted);
+    }
+
+    @Test
+    public void diffIdsSkipsAlreadyInserted() {
+        List<Long> deleted = new ArrayList<>();
+        List<Long> inserted = new ArrayList<>(Collections.singletonList(4L));
+        MediaChangeFeed.diffIds(new long[]{1}, new long[]{1, 4, 6}, deleted, inserted);
+
+        assertTrue(deleted.isEmpty());
+        assertEquals(Arrays.asList(4L, 6L), inserted);
+    }
+
+    @Test
+    public void diffIdsHandlesEmptySides() {
+        List<Long> deleted = new ArrayList<>();
+        List<Long> inserted = new ArrayList<>();
+        MediaChangeFeed.diffIds(new long[0], new long[]{1, 2}, deleted, inserted);
+        assertEquals(Arrays.asList(1L, 2L), inserted);
+
+        inserted.clear();
+        MediaChangeFeed.diffIds(new long[]{1, 2}, new long[0], deleted, inserted);
+        assertEquals(Arrays.asList(1L, 2L), deleted);
+        assertTrue(inserted.isEmpty());
+    }
+
+    @Test
+    public void mergeIdsKeepsArraySorted() {
+        long[] merged = MediaChangeFeed.mergeIds(new long[]{2, 4, 6}, Arrays.asList(5L, 1L));
+        assertArrayEquals(new long[]{1, 2, 4, 5, 6}, merged);
+    }
+
+    @Test
+    public void mergeIdsWithNothingReturnsSameArray() {
+        long[] known = {1, 2};
+        assertSame(known, MediaChangeFeed.mergeIds(known, Collections.<Long>emptyList()));
+    }
+
+    @Test
+    public void removeIdsDropsOnlyKnownIds() {
+        long[] result = MediaChangeFeed.removeIds(new long[]{1, 2, 3, 4}, Arrays.asList(2L, 4L, 9L));
+        assertArrayEquals(new long[]{1, 3}, result);
+    }
+
+    @Test
+    public void removeIdsWithNothingReturnsSameArray() {
+        long[] known = {1, 2};
+        assertSame(known, MediaChangeFeed.removeIds(known, Collections.<Long>emptyList()));
+    }
+
+    @Test
+    public void mergedIdsStayUsableForBinarySearch() {
+        long[] known = MediaChangeFeed.mergeIds(new long[]{10, 30}, Collections.singletonList(20L));
+        known = MediaChangeFeed.removeIds(known, Collections.singletonList(10L));
+
+        assertTrue(Arrays.binarySearch(known, 20L) >= 0);
+        assertTrue(Arrays.binarySearch(known, 10L) < 0);
+    }
+}
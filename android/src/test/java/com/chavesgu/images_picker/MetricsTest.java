@@ -0,0 +1,110 @@
+package com.chavesgu.images_picker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+    @Before
+    public void setUp() {
+        Metrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.reset();
+    }
+
+    @Test
+    public void emptyHistogramIsAbsentFromSnapshot() {
+        assertTrue(stages().isEmpty());
+    }
+
+    @Test
+    public void percentilesAreBucketUpperBoundsCappedByMax() {
+        for (int i = 0; i < 99; i++) {
+            Metrics.recordNanos(Metrics.COMPRESS, 1000 * 1000L);
+        }
+        Metrics.recordNanos(Metrics.COMPRESS, 100 * 1000 * 1000L);
+
+        HashMap<String, Object> histogram = stage(Metrics.COMPRESS);
+        assertEquals(100L, histogram.get("count"));
+        assertEquals(1000L, histogram.get("minMicros"));
+        assertEquals(100000L, histogram.get("maxMicros"));
+        assertEquals((99 * 1000L + 100000L) / 100, histogram.get("meanMicros"));
+        // 1000 мкс попадает в корзину [512, 1024)
+        assertEquals(1023L, histogram.get("p50Micros"));
+        assertEquals(1023L, histogram.get("p90Micros"));
+        assertEquals(1023L, histogram.get("p99Micros"));
+    }
+
+    @Test
+    public void percentileNeverExceedsMax() {
+        Metrics.recordNanos(Metrics.COMPRESS, 600 * 1000L);
+
+        HashMap<String, Object> histogram = stage(Metrics.COMPRESS);
+        assertEquals(600L, histogram.get("p50Micros"));
+        assertEquals(600L, histogram.get("p99Micros"));
+    }
+
+    @Test
+    public void tailPercentileLandsInSlowBucket() {
+        for (int i = 0; i < 90; i++) {
+            Metrics.recordNanos(Metrics.PATH_RESOLVE, 10 * 1000L);
+        }
+        for (int i = 0; i < 10; i++) {
+            Metrics.recordNanos(Metrics.PATH_RESOLVE, 5000 * 1000L);
+        }
+
+        HashMap<String, Object> histogram = stage(Metrics.PATH_RESOLVE);
+        // 10 мкс — корзина [8, 16), 5000 мкс — [4096, 8192)
+        assertEquals(15L, histogram.get("p50Micros"));
+        assertEquals(15L, histogram.get("p90Micros"));
+        assertEquals(5000L, histogram.get("p99Micros"));
+
+        @SuppressWarnings("unchecked")
+        List<Long> buckets = (List<Long>) histogram.get("buckets");
+        assertEquals(90L, (long) buckets.get(3));
+        assertEquals(10L, (long) buckets.get(12));
+    }
+
+    @Test
+    public void negativeDurationsCountAsZero() {
+        Metrics.recordNanos(Metrics.CHANNEL_POST, -5000);
+
+        HashMap<String, Object> histogram = stage(Metrics.CHANNEL_POST);
+        assertEquals(0L, histogram.get("minMicros"));
+        assertEquals(0L, histogram.get("p50Micros"));
+    }
+
+    @Test
+    public void throughputAveragesOverTotalTime() {
+        Metrics.recordBytes(Metrics.COPY, 1000 * 1000L, 1000 * 1000 * 1000L);
+        Metrics.recordBytes(Metrics.COPY, 3000 * 1000L, 1000 * 1000 * 1000L);
+
+        @SuppressWarnings("unchecked")
+        HashMap<String, Object> throughput =
+                (HashMap<String, Object>) ((HashMap<String, Object>) Metrics.snapshot().get("throughput")).get(Metrics.COPY);
+        assertEquals(2L, throughput.get("count"));
+        assertEquals(4000 * 1000L, throughput.get("bytes"));
+        assertEquals(2000 * 1000L, throughput.get("bytesPerSecond"));
+        assertEquals(1000 * 1000L, throughput.get("minBytesPerSecond"));
+        assertEquals(3000 * 1000L, throughput.get("maxBytesPerSecond"));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Object> stages() {
+        return (HashMap<String, Object>) Metrics.snapshot().get("stages");
+    }
+
+    @SuppressWarnings("unchecked")
+    private static HashMap<String, Object> stage(String name) {
+        return (HashMap<String, Object>) stages().get(name);
+    }
+}
@@ -0,0 +1,90 @@
+package com.chavesgu.images_picker;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class SaveIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void findsEntryByAlbumSizeAndDigest() {
+        SaveIndex index = new SaveIndex(folder.getRoot());
+        index.put("Camera", 100, "abc", "content://media/1");
+
+        assertEquals("content://media/1", index.findUri("Camera", 100, "abc"));
+        assertNull(index.findUri("Camera", 100, "other"));
+        assertNull(index.findUri("Other", 100, "abc"));
+        assertTrue(index.hasSize("Camera", 100));
+        assertFalse(index.hasSize("Camera", 101));
+    }
+
+    @Test
+    public void sizeStaysKnownWhileAnyEntryHasIt() {
+        SaveIndex index = new SaveIndex(folder.getRoot());
+        index.put("Camera", 100, "a", "content://media/1");
+        index.put("Camera", 100, "b", "content://media/2");
+
+        index.remove("Camera", 100, "a");
+        assertTrue(index.hasSize("Camera", 100));
+        index.remove("Camera", 100, "b");
+        assertFalse(index.hasSize("Camera", 100));
+    }
+
+    @Test
+    public void evictsOldestEntriesOverLimit() {
+        SaveIndex index = new SaveIndex(folder.getRoot());
+        for (int i = 0; i <= SaveIndex.MAX_ENTRIES; i++) {
+            index.put("Camera", i, "d" + i, "content://media/" + i);
+        }
+
+        assertNull(index.findUri("Camera", 0, "d0"));
+        assertFalse(index.hasSize("Camera", 0));
+        assertEquals("content://media/1", index.findUri("Camera", 1, "d1"));
+        assertEquals("content://media/" + SaveIndex.MAX_ENTRIES,
+                index.findUri("Camera", SaveIndex.MAX_ENTRIES, "d" + SaveIndex.MAX_ENTRIES));
+    }
+
+    @Test
+    public void reloadKeepsEntriesAndInsertionOrder() {
+        SaveIndex index = new SaveIndex(folder.getRoot());
+        for (int i = 0; i < SaveIndex.MAX_ENTRIES; i++) {
+            index.put("Camera", i, "d" + i, "content://media/" + i);
+        }
+
+        SaveIndex reloaded = new SaveIndex(folder.getRoot());
+        assertEquals("content://media/0", reloaded.findUri("Camera", 0, "d0"));
+        assertTrue(reloaded.hasSize("Camera", SaveIndex.MAX_ENTRIES - 1));
+
+        // после перезагрузки вытесняется по-прежнему самая старая запись
+        reloaded.put("Camera", -1, "new", "content://media/new");
+        assertNull(reloaded.findUri("Camera", 0, "d0"));
+        assertEquals("content://media/1", reloaded.findUri("Camera", 1, "d1"));
+    }
+
+    @Test
+    public void skipsCorruptedLines() throws IOException {
+        File file = new File(folder.getRoot(), "images_picker_save_index");
+        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8")) {
+            writer.write("Camera\t10\tgood\tcontent://media/10\n");
+            writer.write("Camera\tnot-a-size\tbad\tcontent://media/11\n");
+            writer.write("truncated line\n");
+        }
+
+        SaveIndex index = new SaveIndex(folder.getRoot());
+        assertEquals("content://media/10", index.findUri("Camera", 10, "good"));
+        assertNull(index.findUri("Camera", 11, "bad"));
+    }
+}
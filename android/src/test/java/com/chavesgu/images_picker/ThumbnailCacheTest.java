@@ -0,0 +1,101 @@
+package com.chavesgu.images_picker;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ThumbnailCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDir;
+
+    @Before
+    public void setUp() {
+        cacheDir = folder.getRoot();
+    }
+
+    @Test
+    public void putThenGetReturnsSamePath() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 100);
+        String path = put(cache, "a", 10);
+        assertNotNull(path);
+        assertEquals(path, cache.get("a"));
+        assertNull(cache.get("missing"));
+    }
+
+    @Test
+    public void evictsLeastRecentlyUsedFirst() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 25);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        // a становится самым свежим, вытесняться должен b
+        assertNotNull(cache.get("a"));
+        put(cache, "c", 10);
+
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void keepsEntryLargerThanLimitUntilNextInsert() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 5);
+        String big = put(cache, "big", 10);
+        assertNotNull(big);
+        assertTrue(new File(big).exists());
+
+        put(cache, "next", 10);
+        assertNull(cache.get("big"));
+        assertNotNull(cache.get("next"));
+    }
+
+    @Test
+    public void setMaxBytesTrimsImmediately() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 100);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        put(cache, "c", 10);
+
+        cache.setMaxBytes(15);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+    }
+
+    @Test
+    public void indexSurvivesRestartAndDropsUnknownFiles() throws IOException {
+        ThumbnailCache cache = new ThumbnailCache(cacheDir, 25);
+        put(cache, "a", 10);
+        put(cache, "b", 10);
+        assertNotNull(cache.get("a"));
+        cache.flush();
+        File stray = cache.newTempFile("stray");
+
+        ThumbnailCache restarted = new ThumbnailCache(cacheDir, 25);
+        // порядок доступа восстановлен из индекса: b самый старый
+        put(restarted, "c", 10);
+        assertNull(restarted.get("b"));
+        assertNotNull(restarted.get("a"));
+        assertFalse(stray.exists());
+    }
+
+    private static String put(ThumbnailCache cache, String key, int size) throws IOException {
+        File tmp = cache.newTempFile(key);
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write(new byte[size]);
+        }
+        return cache.put(key, tmp);
+    }
+}
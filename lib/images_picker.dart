@@ -1,10 +1,27 @@
 import 'dart:async';
 import 'dart:io';
+import 'dart:typed_data';
 import 'package:flutter/services.dart';
 
 class ImagesPicker {
   static const MethodChannel _channel =
       const MethodChannel('chavesgu/images_picker');
+  static const EventChannel _pickStreamChannel =
+      const EventChannel('chavesgu/images_picker/pick_stream');
+  static final Stream<dynamic> _pickEvents =
+      _pickStreamChannel.receiveBroadcastStream();
+  static int _nextStreamId = 0;
+  static const EventChannel _saveProgressChannel =
+      const EventChannel('chavesgu/images_picker/save_progress');
+  static final Stream<dynamic> _saveProgressEvents =
+      _saveProgressChannel.receiveBroadcastStream();
+  static int _nextSaveOperationId = 0;
+  static const EventChannel _mediaChangesChannel =
+      const EventChannel('chavesgu/images_picker/media_changes');
+  static final Stream<MediaChange> _mediaChanges = _mediaChangesChannel
+      .receiveBroadcastStream()
+      .map((event) => MediaChange._fromMap(event));
+  static int _nextThumbnailRequestId = 0;
 
   static Future<List<Media>?> pick({
     int count = 1,
@@ -15,6 +32,13 @@ class ImagesPicker {
     int? maxSize,
     double? quality,
     Language language = Language.System,
+    int thumbMaxWidth = 512,
+    int thumbMaxHeight = 512,
+    double thumbQuality = 0.8,
+    ThumbFormat thumbFormat = ThumbFormat.jpeg,
+    bool thumbData = false,
+    int thumbDataMaxBytes = 64 * 1024,
+    bool lazyThumbnails = false,
   }) async {
     assert(count > 0, 'count must > 0');
     if (quality != null) {
@@ -41,16 +65,16 @@ class ImagesPicker {
               }
             : null,
         "language": language.toString(),
+        "thumbMaxWidth": thumbMaxWidth,
+        "thumbMaxHeight": thumbMaxHeight,
+        "thumbQuality": thumbQuality,
+        "thumbFormat": thumbFormat.toString(),
+        "thumbData": thumbData,
+        "thumbDataMaxBytes": thumbDataMaxBytes,
+        "lazyThumbnails": lazyThumbnails,
       });
       if (res != null) {
-        List<Media> output = res.map((image) {
-          Media media = Media(
-            path: image["path"],
-            size: ((image["size"] ?? 0) / 1024).toDouble(),
-            thumbPath: image["thumbPath"],
-          );
-          return media;
-        }).toList();
+        List<Media> output = res.map(_mediaFromMap).toList();
         return output;
       }
       return null;
@@ -59,6 +83,114 @@ class ImagesPicker {
     }
   }
 
+  /// Like [pick], but emits every selected media as soon as it is ready
+  /// (android only). The stream closes when all items were emitted or the
+  /// user cancelled the picker. On other platforms the stream fails at once
+  /// with an [UnsupportedError].
+  static Stream<Media> pickStream({
+    int count = 1,
+    PickType pickType = PickType.image,
+    bool gif = true,
+    int maxTime = 120,
+    CropOption? cropOpt,
+    int? maxSize,
+    double? quality,
+    Language language = Language.System,
+    int thumbMaxWidth = 512,
+    int thumbMaxHeight = 512,
+    double thumbQuality = 0.8,
+    ThumbFormat thumbFormat = ThumbFormat.jpeg,
+    bool thumbData = false,
+    int thumbDataMaxBytes = 64 * 1024,
+    bool lazyThumbnails = false,
+  }) {
+    assert(count > 0, 'count must > 0');
+    if (quality != null) {
+      assert(quality > 0, 'quality must > 0');
+      assert(quality <= 1, 'quality must <= 1');
+    }
+    if (maxSize != null) {
+      assert(maxSize > 0, 'maxSize must > 0');
+    }
+    if (!Platform.isAndroid) {
+      return Stream<Media>.error(
+          UnsupportedError('pickStream is only supported on android'));
+    }
+    final int streamId = _nextStreamId++;
+    StreamSubscription<dynamic>? subscription;
+    late StreamController<Media> controller;
+    controller = StreamController<Media>(
+      onListen: () {
+        subscription = _pickEvents.listen((event) {
+          if (event is! Map || event["streamId"] != streamId) return;
+          switch (event["type"]) {
+            case "media":
+              controller.add(_mediaFromMap(event["media"]));
+              break;
+            case "done":
+            case "cancel":
+              subscription?.cancel();
+              controller.close();
+              break;
+          }
+        }, onError: controller.addError);
+        _channel.invokeMethod('pick', {
+          "count": count,
+          "pickType": pickType.toString(),
+          "gif": gif,
+          "maxTime": maxTime,
+          "maxSize": maxSize ?? null,
+          "quality": quality ?? -1,
+          "cropOption": cropOpt != null
+              ? {
+                  "quality": quality ?? 1,
+                  "cropType": cropOpt.cropType.toString(),
+                  "aspectRatioX": cropOpt.aspectRatio?.aspectRatioX,
+                  "aspectRatioY": cropOpt.aspectRatio?.aspectRatioY,
+                }
+              : null,
+          "language": language.toString(),
+          "thumbMaxWidth": thumbMaxWidth,
+          "thumbMaxHeight": thumbMaxHeight,
+          "thumbQuality": thumbQuality,
+          "thumbFormat": thumbFormat.toString(),
+          "thumbData": thumbData,
+          "thumbDataMaxBytes": thumbDataMaxBytes,
+          "lazyThumbnails": lazyThumbnails,
+          "streamId": streamId,
+        }).catchError((e) {
+          subscription?.cancel();
+          controller.addError(e);
+          controller.close();
+        });
+      },
+      onCancel: () => subscription?.cancel(),
+    );
+    return controller.stream;
+  }
+
+  static Media _mediaFromMap(dynamic image) {
+    return Media(
+      path: image["path"],
+      size: ((image["size"] ?? 0) / 1024).toDouble(),
+      thumbPath: image["thumbPath"],
+      thumbData: image["thumbData"],
+      quality: image["quality"],
+      width: image["width"],
+      height: image["height"],
+      duration: image["duration"],
+      orientation: image["orientation"],
+      mimeType: image["mimeType"],
+    );
+  }
+
+  /// With [albumName] (android only), the system camera app writes the
+  /// capture straight into a new entry of that album, which is published
+  /// once the capture succeeds. The returned path is the gallery file, with no
+  /// cache copy (on android 10 without legacy storage the file can't be read
+  /// by path, so a cache copy is returned). [maxSize] and [quality] apply as
+  /// usual; [cropOpt] and a non-system [language] are not supported in this
+  /// mode.
   static Future<List<Media>?> openCamera({
     PickType pickType = PickType.image,
     int maxTime = 15,
@@ -66,6 +198,14 @@ class ImagesPicker {
     int? maxSize,
     double? quality,
     Language language = Language.System,
+    int thumbMaxWidth = 512,
+    int thumbMaxHeight = 512,
+    double thumbQuality = 0.8,
+    ThumbFormat thumbFormat = ThumbFormat.jpeg,
+    bool thumbData = false,
+    int thumbDataMaxBytes = 64 * 1024,
+    bool lazyThumbnails = false,
+    String? albumName,
   }) async {
     if (quality != null) {
       assert(quality > 0, 'quality must > 0');
@@ -74,6 +214,11 @@ class ImagesPicker {
     if (maxSize != null) {
       assert(maxSize > 0, 'maxSize must > 0');
     }
+    if (albumName != null) {
+      assert(cropOpt == null, 'cropOpt is not supported with albumName');
+      assert(language == Language.System,
+          'language is not supported with albumName');
+    }
     try {
       List<dynamic>? res = await _channel.invokeMethod('openCamera', {
         "pickType": pickType.toString(),
@@ -89,16 +234,17 @@ class ImagesPicker {
               }
             : null,
         "language": language.toString(),
+        "thumbMaxWidth": thumbMaxWidth,
+        "thumbMaxHeight": thumbMaxHeight,
+        "thumbQuality": thumbQuality,
+        "thumbFormat": thumbFormat.toString(),
+        "thumbData": thumbData,
+        "thumbDataMaxBytes": thumbDataMaxBytes,
+        "lazyThumbnails": lazyThumbnails,
+        "albumName": albumName,
       });
       if (res != null) {
-        List<Media> output = res.map((image) {
-          Media media = Media(
-            path: image["path"],
-            size: ((image["size"] ?? 0) / 1024).toDouble(),
-            thumbPath: image["thumbPath"],
-          );
-          return media;
-        }).toList();
+        List<Media> output = res.map(_mediaFromMap).toList();
         return output;
       }
       return null;
@@ -107,11 +253,158 @@ class ImagesPicker {
     }
   }
 
-  static Future<bool> saveImageToAlbum(File file, {String? albumName}) async {
+  /// Tunes the Glide instance used by the picker grid (android only).
+  /// Glide is shared with the host app, so cache sizes and the disk cache
+  /// location only apply if Glide has not been created yet: call this early,
+  /// before the app or the picker loads any image. Returns false if the
+  /// requested cache settings could not be applied (the other options always
+  /// apply). Null sizes keep Glide's defaults.
+  /// [lowMemoryDecode] decodes grid tiles and album covers as RGB_565, so the
+  /// same heap holds about twice as many tiles.
+  /// [systemThumbnails] fills grid tiles from the thumbnails kept by the
+  /// system MediaStore and decodes the original file only when none exists.
+  static Future<bool> configureGlide({
+    int? memoryCacheBytes,
+    int? bitmapPoolBytes,
+    int? diskCacheBytes,
+    DiskCacheLocation diskCacheLocation = DiskCacheLocation.internal,
+    String? diskCacheName,
+    bool lowMemoryDecode = false,
+    ImageMemoryCategory memoryCategory = ImageMemoryCategory.normal,
+    bool systemThumbnails = false,
+  }) async {
+    final applied = await _channel.invokeMethod('configureGlide', {
+      "memoryCacheBytes": memoryCacheBytes,
+      "bitmapPoolBytes": bitmapPoolBytes,
+      "diskCacheBytes": diskCacheBytes,
+      "diskCacheLocation": diskCacheLocation.toString(),
+      "diskCacheName": diskCacheName,
+      "lowMemoryDecode": lowMemoryDecode,
+      "memoryCategory": memoryCategory.toString(),
+      "systemThumbnails": systemThumbnails,
+    });
+    return applied == true;
+  }
+
+  /// Returns timings collected by the plugin (android only):
+  /// `{"stages": {name: histogram}, "throughput": {name: stats}}`.
+  ///
+  /// Stages: pickTotal, pathResolve, compress, thumbnailDecode,
+  /// thumbnailEncode, sizeStat, channelPost, mediaStoreInsert,
+  /// mediaStoreWrite, mediaStorePublish. A histogram has count, totalMicros,
+  /// min/max/meanMicros, p50/p90/p99Micros and log2 `buckets` in
+  /// microseconds. Throughput "copy" has count, bytes, micros and
+  /// bytesPerSecond (average, min, max).
+  static Future<Map<String, dynamic>> getMetrics() async {
+    Map<dynamic, dynamic>? res = await _channel.invokeMethod('getMetrics');
+    return Map<String, dynamic>.from(res ?? {});
+  }
+
+  /// Clears the collected timings (android only).
+  static Future<void> resetMetrics() async {
+    await _channel.invokeMethod('resetMetrics');
+  }
+
+  /// Logs every stage timing and picked item to logcat (android only).
+  static Future<void> setTraceEnabled(bool enabled) async {
+    await _channel.invokeMethod('setTraceEnabled', {
+      "enabled": enabled,
+    });
+  }
+
+  /// Sets the disk budget of the video thumbnail cache (android only).
+  /// Least recently used thumbnails are evicted above this size.
+  static Future<void> setThumbnailCacheSize(int maxBytes) async {
+    assert(maxBytes >= 0, 'maxBytes must >= 0');
+    await _channel.invokeMethod('setThumbnailCacheSize', {
+      "maxBytes": maxBytes,
+    });
+  }
+
+  /// Lists the albums of the device library without opening the picker
+  /// (android only), newest first. Each album has its item count and cover.
+  static Future<List<MediaAlbum>> queryAlbums({
+    PickType pickType = PickType.all,
+  }) async {
     try {
-      return await _channel.invokeMethod('saveImageToAlbum', {
-        "path": file.path,
-        "albumName": albumName,
+      List<dynamic>? res = await _channel.invokeMethod('queryAlbums', {
+        "pickType": pickType.toString(),
+      });
+      return (res ?? []).map((e) => MediaAlbum._fromMap(e)).toList();
+    } on PlatformException catch (e) {
+      print(e);
+      return [];
+    }
+  }
+
+  /// Returns one page of the library (android only), newest first.
+  /// Pass [albumId] from [queryAlbums] to list a single album, or null for
+  /// all of them. Only [limit] rows are read, so memory stays constant while
+  /// paging through large libraries.
+  static Future<List<MediaAsset>> queryAssets({
+    String? albumId,
+    int offset = 0,
+    int limit = 100,
+    PickType pickType = PickType.all,
+  }) async {
+    assert(offset >= 0, 'offset must >= 0');
+    assert(limit > 0, 'limit must > 0');
+    try {
+      List<dynamic>? res = await _channel.invokeMethod('queryAssets', {
+        "albumId": albumId,
+        "offset": offset,
+        "limit": limit,
+        "pickType": pickType.toString(),
+      });
+      return (res ?? []).map((e) => MediaAsset._fromMap(e)).toList();
+    } on PlatformException catch (e) {
+      print(e);
+      return [];
+    }
+  }
+
+  /// Changes of the device library (android only), batched and debounced.
+  /// Ids match [MediaAsset.id]. When [MediaChange.reset] is true the
+  /// library was rebuilt and the ids cannot be diffed, so query it again.
+  static Stream<MediaChange> get mediaChanges => _mediaChanges;
+
+  /// Creates (or returns the cached) thumbnail of an image or video file
+  /// (android only). Use it with `lazyThumbnails: true` to load thumbnails
+  /// only for the items that are shown. Concurrent requests for the same
+  /// thumbnail share one decode. Returns null on failure or cancellation.
+  static Future<String?> getThumbnail(
+    String path, {
+    int width = 512,
+    int height = 512,
+    double quality = 0.8,
+    ThumbFormat format = ThumbFormat.jpeg,
+    int? requestId,
+  }) async {
+    try {
+      return await _channel.invokeMethod('getThumbnail', {
+        "path": path,
+        "thumbMaxWidth": width,
+        "thumbMaxHeight": height,
+        "thumbQuality": quality,
+        "thumbFormat": format.toString(),
+        "requestId": requestId,
+      });
+    } on PlatformException catch (e) {
+      print(e);
+      return null;
+    }
+  }
+
+  /// Returns a new id for [getThumbnail], which can be passed to
+  /// [cancelThumbnail] when the item is no longer visible.
+  static int createThumbnailRequestId() => _nextThumbnailRequestId++;
+
+  /// Cancels a pending [getThumbnail] request (android only), which then
+  /// completes with null.
+  static Future<bool> cancelThumbnail(int requestId) async {
+    try {
+      return await _channel.invokeMethod('cancelThumbnail', {
+        "requestId": requestId,
       });
     } on PlatformException catch (e) {
       print(e);
@@ -119,17 +412,210 @@ class ImagesPicker {
     }
   }
 
-  static Future<bool> saveVideoToAlbum(File file, {String? albumName}) async {
+  /// Limits how many album saves run at the same time on android
+  /// (default 2). Further saves wait in a queue.
+  static Future<void> setMaxConcurrentSaves(int count) async {
+    assert(count > 0, 'count must > 0');
+    await _channel.invokeMethod('setMaxConcurrentSaves', {
+      "count": count,
+    });
+  }
+
+  /// Returns a new id for [saveImageToAlbum] / [saveVideoToAlbum], which can
+  /// be passed to [cancelSave] while the save is running.
+  static int createSaveOperationId() => _nextSaveOperationId++;
+
+  /// Cancels a running save (android only). The partially written file is
+  /// removed and the save completes with `false`.
+  static Future<bool> cancelSave(int operationId) async {
     try {
-      return await _channel.invokeMethod('saveVideoToAlbum', {
-        "path": file.path,
-        "albumName": albumName,
+      return await _channel.invokeMethod('cancelSave', {
+        "operationId": operationId,
       });
     } on PlatformException catch (e) {
       print(e);
       return false;
     }
   }
+
+  /// Saves the original bytes of [file] (EXIF included) to the album.
+  /// Set [transcode] to re-encode the image on android, using the format of
+  /// the file suffix and [quality].
+  static Future<bool> saveImageToAlbum(
+    File file, {
+    String? albumName,
+    bool transcode = false,
+    double quality = 1,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  }) async {
+    assert(quality > 0, 'quality must > 0');
+    assert(quality <= 1, 'quality must <= 1');
+    return _saveToAlbum('saveImageToAlbum', {
+      "path": file.path,
+      "albumName": albumName,
+      "transcode": transcode,
+      "quality": quality,
+    }, operationId, onProgress);
+  }
+
+  static Future<bool> saveVideoToAlbum(
+    File file, {
+    String? albumName,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  }) async {
+    return _saveToAlbum('saveVideoToAlbum', {
+      "path": file.path,
+      "albumName": albumName,
+    }, operationId, onProgress);
+  }
+
+  /// Saves the original bytes of [file] to the album (android only) and
+  /// returns its uri together with the SHA-256 of the content, computed
+  /// while the file is written.
+  ///
+  /// With [dedupe], a file of the same size and digest that was already saved
+  /// to this album is returned as is (`duplicate == true`) and nothing is
+  /// written.
+  static Future<SaveResult> saveFileToAlbum(
+    File file, {
+    bool isVideo = false,
+    String? albumName,
+    bool dedupe = false,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  }) async {
+    return _saveForResult('saveFileToAlbum', {
+      "path": file.path,
+      "isVideo": isVideo,
+      "albumName": albumName,
+      "dedupe": dedupe,
+    }, operationId, onProgress);
+  }
+
+  /// Saves [bytes] to the album as is, without a temp file (android only).
+  /// [mimeType] must be an `image/*` or `video/*` type and selects the
+  /// collection the file is saved to.
+  static Future<SaveResult> saveBytesToAlbum(
+    Uint8List bytes, {
+    required String mimeType,
+    String? albumName,
+    bool dedupe = false,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  }) async {
+    return _saveForResult('saveBytesToAlbum', {
+      "bytes": bytes,
+      "mimeType": mimeType,
+      "albumName": albumName,
+      "dedupe": dedupe,
+    }, operationId, onProgress);
+  }
+
+  /// Streams the content of a `content://` [uri] to the album (android only).
+  /// [mimeType] defaults to the type reported by the content provider.
+  static Future<SaveResult> saveUriToAlbum(
+    String uri, {
+    String? mimeType,
+    String? albumName,
+    bool dedupe = false,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  }) async {
+    return _saveForResult('saveUriToAlbum', {
+      "uri": uri,
+      "mimeType": mimeType,
+      "albumName": albumName,
+      "dedupe": dedupe,
+    }, operationId, onProgress);
+  }
+
+  static Future<SaveResult> _saveForResult(
+    String method,
+    Map<String, dynamic> arguments,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  ) async {
+    try {
+      final res = await _invokeSave(method, arguments, operationId, onProgress);
+      if (res != null) return SaveResult._fromMap(res);
+    } on PlatformException catch (e) {
+      print(e);
+    }
+    return SaveResult(success: false, size: 0);
+  }
+
+  static Future<bool> _saveToAlbum(
+    String method,
+    Map<String, dynamic> arguments,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  ) async {
+    try {
+      return await _invokeSave(method, arguments, operationId, onProgress);
+    } on PlatformException catch (e) {
+      print(e);
+      return false;
+    }
+  }
+
+  static Future<dynamic> _invokeSave(
+    String method,
+    Map<String, dynamic> arguments,
+    int? operationId,
+    void Function(SaveProgress progress)? onProgress,
+  ) async {
+    if (onProgress != null) operationId ??= createSaveOperationId();
+    StreamSubscription<dynamic>? subscription;
+    if (onProgress != null) {
+      subscription = _saveProgressEvents.listen((event) {
+        if (event is! Map || event["operationId"] != operationId) return;
+        onProgress(SaveProgress(
+          operationId: operationId!,
+          bytesWritten: event["bytesWritten"],
+          totalBytes: event["totalBytes"],
+          bytesPerSecond: event["bytesPerSecond"],
+        ));
+      });
+    }
+    try {
+      return await _channel.invokeMethod(method, {
+        ...arguments,
+        "operationId": operationId,
+      });
+    } finally {
+      await subscription?.cancel();
+    }
+  }
+
+  /// Saves several images to the album at once (android only).
+  /// Returns the result of every file in the order of [files].
+  static Future<List<bool>> saveImagesToAlbum(List<File> files,
+      {String? albumName}) async {
+    return _saveAllToAlbum('saveImagesToAlbum', files, albumName);
+  }
+
+  /// Saves several videos to the album at once (android only).
+  /// Returns the result of every file in the order of [files].
+  static Future<List<bool>> saveVideosToAlbum(List<File> files,
+      {String? albumName}) async {
+    return _saveAllToAlbum('saveVideosToAlbum', files, albumName);
+  }
+
+  static Future<List<bool>> _saveAllToAlbum(
+      String method, List<File> files, String? albumName) async {
+    try {
+      List<dynamic>? res = await _channel.invokeMethod(method, {
+        "paths": files.map((file) => file.path).toList(),
+        "albumName": albumName,
+      });
+      if (res != null) return res.map((ok) => ok == true).toList();
+    } on PlatformException catch (e) {
+      print(e);
+    }
+    return files.map((_) => false).toList();
+  }
 }
 
 enum PickType {
@@ -138,6 +624,23 @@ enum PickType {
   all,
 }
 
+enum ThumbFormat {
+  jpeg,
+  png,
+  webp,
+}
+
+enum DiskCacheLocation {
+  internal,
+  external,
+}
+
+enum ImageMemoryCategory {
+  low,
+  normal,
+  high,
+}
+
 enum CropType {
   rect,
   circle,
@@ -183,10 +686,15 @@ class CropOption {
 }
 
 class Media {
-  ///视频缩略图图片路径
-  ///Video thumbnail image path
+  ///视频缩略图图片路径, lazyThumbnails 时为空, 请使用 getThumbnail
+  ///Video thumbnail image path, null for videos picked with lazyThumbnails
+  ///(use [ImagesPicker.getThumbnail])
   String? thumbPath;
 
+  ///缩略图数据, 需要 thumbData: true (android)
+  ///Encoded thumbnail bytes, filled when picked with thumbData: true (android)
+  Uint8List? thumbData;
+
   ///视频路径或图片路径
   ///Video path or image path
   String path;
@@ -194,9 +702,197 @@ class Media {
   /// 文件大小
   double size;
 
+  ///按 maxSize 压缩时使用的质量 (android)
+  ///Quality used to compress the image to maxSize (android)
+  double? quality;
+
+  ///宽高, 未旋转 (android)
+  ///Width and height before applying [orientation] (android)
+  int? width;
+  int? height;
+
+  ///视频时长, 毫秒 (android)
+  ///Video duration in milliseconds (android)
+  int? duration;
+
+  ///旋转角度 0, 90, 180, 270 (android)
+  ///Rotation in degrees: 0, 90, 180 or 270 (android)
+  int? orientation;
+
+  String? mimeType;
+
   Media({
     required this.path,
     this.thumbPath,
+    this.thumbData,
+    required this.size,
+    this.quality,
+    this.width,
+    this.height,
+    this.duration,
+    this.orientation,
+    this.mimeType,
+  });
+}
+
+class SaveProgress {
+  final int operationId;
+
+  /// 已写入字节数
+  /// Bytes written so far
+  final int bytesWritten;
+
+  /// 文件总字节数，未知时为 -1
+  /// Total bytes of the file, -1 if unknown
+  final int totalBytes;
+
+  /// 写入速度
+  /// Write throughput
+  final int bytesPerSecond;
+
+  SaveProgress({
+    required this.operationId,
+    required this.bytesWritten,
+    required this.totalBytes,
+    required this.bytesPerSecond,
+  });
+}
+
+class SaveResult {
+  final bool success;
+
+  /// content:// uri of the saved file (file:// below android 10)
+  final String? uri;
+
+  /// SHA-256 of the content, hex
+  final String? digest;
+  final int size;
+
+  /// The same file was already in the album and nothing was written
+  final bool duplicate;
+
+  SaveResult({
+    required this.success,
+    this.uri,
+    this.digest,
+    required this.size,
+    this.duplicate = false,
+  });
+
+  static SaveResult _fromMap(dynamic map) {
+    return SaveResult(
+      success: map["success"] == true,
+      uri: map["uri"],
+      digest: map["digest"],
+      size: map["size"] ?? 0,
+      duplicate: map["duplicate"] == true,
+    );
+  }
+}
+
+class MediaAlbum {
+  final String id;
+  final String? name;
+  final int count;
+
+  /// content:// uri and file path of the newest item
+  final String coverUri;
+  final String? coverPath;
+
+  MediaAlbum({
+    required this.id,
+    this.name,
+    required this.count,
+    required this.coverUri,
+    this.coverPath,
+  });
+
+  static MediaAlbum _fromMap(dynamic map) {
+    return MediaAlbum(
+      id: map["id"],
+      name: map["name"],
+      count: map["count"],
+      coverUri: map["coverUri"],
+      coverPath: map["coverPath"],
+    );
+  }
+}
+
+class MediaAsset {
+  /// MediaStore id
+  final int id;
+  final String uri;
+
+  /// File path, may be missing or not readable on android 10+
+  final String? path;
+  final PickType type;
+  final String? mimeType;
+  final int width;
+  final int height;
+
+  /// Milliseconds, 0 for images
+  final int duration;
+  final int orientation;
+
+  /// Bytes
+  final int size;
+
+  /// Seconds since epoch
+  final int dateModified;
+  final String? albumId;
+
+  MediaAsset({
+    required this.id,
+    required this.uri,
+    this.path,
+    required this.type,
+    this.mimeType,
+    required this.width,
+    required this.height,
+    required this.duration,
+    required this.orientation,
     required this.size,
+    required this.dateModified,
+    this.albumId,
+  });
+
+  static MediaAsset _fromMap(dynamic map) {
+    return MediaAsset(
+      id: map["id"],
+      uri: map["uri"],
+      path: map["path"],
+      type: map["type"] == "video" ? PickType.video : PickType.image,
+      mimeType: map["mimeType"],
+      width: map["width"],
+      height: map["height"],
+      duration: map["duration"],
+      orientation: map["orientation"],
+      size: map["size"],
+      dateModified: map["dateModified"],
+      albumId: map["albumId"],
+    );
+  }
+}
+
+class MediaChange {
+  final List<int> inserted;
+  final List<int> updated;
+  final List<int> deleted;
+  final bool reset;
+
+  MediaChange({
+    required this.inserted,
+    required this.updated,
+    required this.deleted,
+    this.reset = false,
   });
+
+  static MediaChange _fromMap(dynamic map) {
+    return MediaChange(
+      inserted: List<int>.from(map["inserted"] ?? []),
+      updated: List<int>.from(map["updated"] ?? []),
+      deleted: List<int>.from(map["deleted"] ?? []),
+      reset: map["reset"] ?? false,
+    );
+  }
 }
@@ -1,18 +1,253 @@
+import 'dart:io';
+import 'dart:typed_data';
+
 import 'package:flutter/services.dart';
 import 'package:flutter_test/flutter_test.dart';
+import 'package:images_picker/images_picker.dart';
 
 void main() {
-  const MethodChannel channel = MethodChannel('images_picker');
+  const MethodChannel channel = MethodChannel('chavesgu/images_picker');
+  final List<MethodCall> log = <MethodCall>[];
+  dynamic response;
 
   TestWidgetsFlutterBinding.ensureInitialized();
 
   setUp(() {
+    response = null;
     channel.setMockMethodCallHandler((MethodCall methodCall) async {
-      return '42';
+      log.add(methodCall);
+      return response;
     });
   });
 
   tearDown(() {
     channel.setMockMethodCallHandler(null);
+    log.clear();
+  });
+
+  test('setMaxConcurrentSaves sends count', () async {
+    await ImagesPicker.setMaxConcurrentSaves(3);
+
+    expect(log, hasLength(1));
+    expect(log.single.method, 'setMaxConcurrentSaves');
+    expect(log.single.arguments, {"count": 3});
+  });
+
+  test('getThumbnail sends size, quality, format and request id', () async {
+    response = '/cache/thumb.jpg';
+    final path = await ImagesPicker.getThumbnail(
+      '/sdcard/DCIM/a.mp4',
+      width: 256,
+      height: 128,
+      quality: 0.5,
+      format: ThumbFormat.webp,
+      requestId: 7,
+    );
+
+    expect(path, '/cache/thumb.jpg');
+    expect(log.single.method, 'getThumbnail');
+    expect(log.single.arguments, {
+      "path": '/sdcard/DCIM/a.mp4',
+      "thumbMaxWidth": 256,
+      "thumbMaxHeight": 128,
+      "thumbQuality": 0.5,
+      "thumbFormat": 'ThumbFormat.webp',
+      "requestId": 7,
+    });
+  });
+
+  test('cancelThumbnail sends request id', () async {
+    response = true;
+    expect(await ImagesPicker.cancelThumbnail(7), isTrue);
+    expect(log.single.method, 'cancelThumbnail');
+    expect(log.single.arguments, {"requestId": 7});
+  });
+
+  test('configureGlide sends cache options and returns the result', () async {
+    response = false;
+    final applied = await ImagesPicker.configureGlide(
+      memoryCacheBytes: 1024,
+      diskCacheBytes: 4096,
+      diskCacheLocation: DiskCacheLocation.external,
+      diskCacheName: 'grid',
+      lowMemoryDecode: true,
+      memoryCategory: ImageMemoryCategory.low,
+      systemThumbnails: true,
+    );
+
+    expect(applied, isFalse);
+    expect(log.single.method, 'configureGlide');
+    expect(log.single.arguments, {
+      "memoryCacheBytes": 1024,
+      "bitmapPoolBytes": null,
+      "diskCacheBytes": 4096,
+      "diskCacheLocation": 'DiskCacheLocation.external',
+      "diskCacheName": 'grid',
+      "lowMemoryDecode": true,
+      "memoryCategory": 'ImageMemoryCategory.low',
+      "systemThumbnails": true,
+    });
+  });
+
+  test('queryAssets sends paging arguments and decodes rows', () async {
+    response = [
+      {
+        "id": 42,
+        "uri": 'content://media/external/images/media/42',
+        "path": '/sdcard/DCIM/a.jpg',
+        "type": 'image',
+        "mimeType": 'image/jpeg',
+        "width": 4000,
+        "height": 3000,
+        "duration": 0,
+        "orientation": 90,
+        "size": 123456,
+        "dateModified": 1700000000,
+        "albumId": '-1739773001',
+      },
+    ];
+    final assets = await ImagesPicker.queryAssets(
+      albumId: '-1739773001',
+      offset: 100,
+      limit: 50,
+      pickType: PickType.image,
+    );
+
+    expect(log.single.method, 'queryAssets');
+    expect(log.single.arguments, {
+      "albumId": '-1739773001',
+      "offset": 100,
+      "limit": 50,
+      "pickType": 'PickType.image',
+    });
+    expect(assets, hasLength(1));
+    expect(assets.single.id, 42);
+    expect(assets.single.type, PickType.image);
+    expect(assets.single.orientation, 90);
+    expect(assets.single.albumId, '-1739773001');
+  });
+
+  test('queryAlbums decodes albums', () async {
+    response = [
+      {
+        "id": '-1739773001',
+        "name": 'Camera',
+        "count": 12,
+        "coverId": 42,
+        "coverUri": 'content://media/external/images/media/42',
+        "coverPath": '/sdcard/DCIM/a.jpg',
+      },
+    ];
+    final albums = await ImagesPicker.queryAlbums(pickType: PickType.video);
+
+    expect(log.single.arguments, {"pickType": 'PickType.video'});
+    expect(albums.single.name, 'Camera');
+    expect(albums.single.count, 12);
+  });
+
+  test('saveFileToAlbum sends dedupe and decodes the result', () async {
+    response = {
+      "success": true,
+      "uri": 'content://media/external/images/media/7',
+      "digest": 'ab12',
+      "size": 2048,
+      "duplicate": true,
+    };
+    final result = await ImagesPicker.saveFileToAlbum(
+      File('/tmp/a.jpg'),
+      albumName: 'Album',
+      dedupe: true,
+      operationId: 5,
+    );
+
+    expect(log.single.method, 'saveFileToAlbum');
+    expect(log.single.arguments, {
+      "path": '/tmp/a.jpg',
+      "isVideo": false,
+      "albumName": 'Album',
+      "dedupe": true,
+      "operationId": 5,
+    });
+    expect(result.success, isTrue);
+    expect(result.digest, 'ab12');
+    expect(result.size, 2048);
+    expect(result.duplicate, isTrue);
+  });
+
+  test('saveFileToAlbum reports failure on platform error', () async {
+    channel.setMockMethodCallHandler((MethodCall methodCall) async {
+      throw PlatformException(code: 'SAVE_FAILED');
+    });
+    final result = await ImagesPicker.saveFileToAlbum(File('/tmp/a.jpg'));
+
+    expect(result.success, isFalse);
+    expect(result.size, 0);
+  });
+
+  test('saveBytesToAlbum sends bytes and mime type', () async {
+    response = {"success": true, "size": 3};
+    final bytes = Uint8List.fromList([1, 2, 3]);
+    final result = await ImagesPicker.saveBytesToAlbum(
+      bytes,
+      mimeType: 'image/png',
+      albumName: 'Album',
+    );
+
+    expect(log.single.method, 'saveBytesToAlbum');
+    expect(log.single.arguments, {
+      "bytes": bytes,
+      "mimeType": 'image/png',
+      "albumName": 'Album',
+      "dedupe": false,
+      "operationId": null,
+    });
+    expect(result.success, isTrue);
+    expect(result.size, 3);
+  });
+
+  test('saveUriToAlbum sends uri and leaves mime type to the provider',
+      () async {
+    response = {"success": true, "size": 10};
+    await ImagesPicker.saveUriToAlbum(
+      'content://downloads/1',
+      dedupe: true,
+    );
+
+    expect(log.single.method, 'saveUriToAlbum');
+    expect(log.single.arguments, {
+      "uri": 'content://downloads/1',
+      "mimeType": null,
+      "albumName": null,
+      "dedupe": true,
+      "operationId": null,
+    });
+  });
+
+  test('openCamera sends albumName for direct capture', () async {
+    await ImagesPicker.openCamera(
+      pickType: PickType.video,
+      maxTime: 30,
+      albumName: 'Album',
+    );
+
+    expect(log.single.method, 'openCamera');
+    final arguments = log.single.arguments as Map;
+    expect(arguments["albumName"], 'Album');
+    expect(arguments["pickType"], 'PickType.video');
+    expect(arguments["maxTime"], 30);
+    expect(arguments["cropOption"], isNull);
+    expect(arguments["language"], 'Language.System');
+  });
+
+  test('openCamera rejects crop and language with albumName', () async {
+    await expectLater(
+      ImagesPicker.openCamera(albumName: 'Album', cropOpt: CropOption()),
+      throwsAssertionError,
+    );
+    await expectLater(
+      ImagesPicker.openCamera(albumName: 'Album', language: Language.English),
+      throwsAssertionError,
+    );
+    expect(log, isEmpty);
   });
 }